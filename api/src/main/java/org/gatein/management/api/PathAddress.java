@@ -24,8 +24,9 @@ package org.gatein.management.api;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * An object to represent the address of managed resources.
@@ -35,7 +36,7 @@ import java.util.List;
  */
 public class PathAddress implements Iterable<String>
 {
-   public static final PathAddress EMPTY_ADDRESS = new PathAddress(Collections.<String>emptyList());
+   public static final PathAddress EMPTY_ADDRESS = new PathAddress(new String[0], 0, 0);
 
    /**
     * @return an empty PathAddress to be used to identify no address when looking up a resource.
@@ -54,12 +55,13 @@ public class PathAddress implements Iterable<String>
    {
       if (paths == null || paths.length == 0) return empty();
 
-      PathAddress address = PathAddress.empty();
+      List<String> list = new ArrayList<String>(paths.length);
       for (String path : paths)
       {
-         address = address.append(path);
+         if (path != null) list.addAll(split(path, '/'));
       }
-      return address;
+
+      return pathAddress(list);
    }
 
    /**
@@ -71,26 +73,48 @@ public class PathAddress implements Iterable<String>
    {
       if (addressPath == null || addressPath.length() == 0) return empty();
 
-      if (addressPath.charAt(0) == '/')
-      {
-         addressPath = addressPath.substring(1, addressPath.length());
-      }
+      return pathAddress(split(addressPath, '/'));
+   }
 
-      return new PathAddress(split(addressPath, "/"));
+   private static PathAddress pathAddress(List<String> list)
+   {
+      if (list.isEmpty()) return empty();
+
+      return new PathAddress(list.toArray(new String[list.size()]), 0, list.size());
    }
 
-   List<String> pathList;
-   private List<PathTemplateResolver> resolvers;
+   // Addresses created by appending link to the address they were appended to, sharing it as their prefix.
+   private final PathAddress prefix;
+   private final String segment;
+   private final int size;
+
+   // Segments are never modified once the address is created, so views of the same address share the array. For
+   // appended addresses the array is flattened from the prefix chain the first time a segment is accessed by index.
+   private final int start;
+   private volatile String[] segments;
+
+   private volatile List<PathTemplateResolver> resolvers = Collections.emptyList();
+   private volatile Map<String, String> bindings = Collections.emptyMap();
 
-   PathAddress(final List<String> pathList)
+   // Lazily computed, as the address is immutable
+   private int hashCode;
+   private String string;
+
+   PathAddress(final String[] segments, final int start, final int end)
    {
-      this(pathList, new ArrayList<PathTemplateResolver>());
+      this.prefix = null;
+      this.segment = null;
+      this.segments = segments;
+      this.start = start;
+      this.size = end - start;
    }
 
-   PathAddress(final List<String> pathList, final List<PathTemplateResolver> resolvers)
+   private PathAddress(final PathAddress prefix, final String segment)
    {
-      this.pathList = pathList;
-      this.resolvers = resolvers;
+      this.prefix = prefix;
+      this.segment = segment;
+      this.start = 0;
+      this.size = prefix.size + 1;
    }
 
    /**
@@ -110,11 +134,18 @@ public class PathAddress implements Iterable<String>
     */
    public PathAddress append(PathAddress address)
    {
-      List<String> list = new ArrayList<String>(pathList.size() + address.pathList.size());
-      list.addAll(pathList);
-      list.addAll(address.pathList);
+      PathAddress appended = this;
+      for (int i = 0; i < address.size; i++)
+      {
+         appended = new PathAddress(appended, address.get(i));
+      }
+
+      if (appended == this) return copy();
 
-      return new PathAddress(list, new ArrayList<PathTemplateResolver>(resolvers));
+      appended.resolvers = resolvers;
+      appended.bindings = bindings;
+
+      return appended;
    }
 
    /**
@@ -125,7 +156,7 @@ public class PathAddress implements Iterable<String>
     */
    public PathAddress subAddress(int start)
    {
-      return new PathAddress(pathList.subList(start, pathList.size()));
+      return subAddress(start, size());
    }
 
    /**
@@ -137,7 +168,12 @@ public class PathAddress implements Iterable<String>
     */
    public PathAddress subAddress(int start, int end)
    {
-      return new PathAddress(pathList.subList(start, end));
+      if (start < 0 || end > size() || start > end)
+      {
+         throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", size: " + size());
+      }
+
+      return new PathAddress(segments(), this.start + start, this.start + end);
    }
 
    /**
@@ -145,7 +181,9 @@ public class PathAddress implements Iterable<String>
     */
    public String getLastElement()
    {
-      return pathList.size() == 0 ? null : pathList.get(pathList.size() - 1);
+      if (size == 0) return null;
+
+      return (prefix == null) ? segments[start + size - 1] : segment;
    }
 
    /**
@@ -156,7 +194,32 @@ public class PathAddress implements Iterable<String>
     */
    public String get(int index)
    {
-      return pathList.get(index);
+      if (index < 0 || index >= size())
+      {
+         throw new IndexOutOfBoundsException("index: " + index + ", size: " + size());
+      }
+
+      return segments()[start + index];
+   }
+
+   private String[] segments()
+   {
+      String[] array = segments;
+      if (array == null)
+      {
+         array = new String[size];
+         PathAddress address = this;
+         while (address.prefix != null && address.segments == null)
+         {
+            array[address.size - 1] = address.segment;
+            address = address.prefix;
+         }
+         System.arraycopy(address.segments, address.start, array, 0, address.size);
+
+         segments = array;
+      }
+
+      return array;
    }
 
    /**
@@ -166,6 +229,9 @@ public class PathAddress implements Iterable<String>
     */
    public String resolvePathTemplate(String templateName)
    {
+      String bound = bindings.get(templateName);
+      if (bound != null) return bound;
+
       for (PathTemplateResolver resolver : resolvers)
       {
          String resolved = resolver.resolve(templateName);
@@ -177,12 +243,38 @@ public class PathAddress implements Iterable<String>
 
    public void addPathTemplateResolver(PathTemplateResolver resolver)
    {
-      resolvers.add(0, resolver);
+      List<PathTemplateResolver> list = new ArrayList<PathTemplateResolver>(resolvers.size() + 1);
+      list.add(resolver);
+      list.addAll(resolvers);
+      resolvers = Collections.unmodifiableList(list);
    }
 
    public List<PathTemplateResolver> getPathTemplateResolvers()
    {
-      return Collections.unmodifiableList(resolvers);
+      return resolvers;
+   }
+
+   /**
+    * All path template variables bound to this address when the managed resource for this address was located.
+    * @return immutable map of template variable names to their values.
+    */
+   public Map<String, String> getPathTemplateBindings()
+   {
+      return bindings;
+   }
+
+   /**
+    * Binds path template variables to this address. Values bound here take precedence over previously bound values
+    * and over any {@link PathTemplateResolver}.
+    * @param templateBindings map of template variable names to their values.
+    */
+   public void addPathTemplateBindings(Map<String, String> templateBindings)
+   {
+      if (templateBindings.isEmpty()) return;
+
+      Map<String, String> map = new HashMap<String, String>(bindings);
+      map.putAll(templateBindings);
+      bindings = Collections.unmodifiableMap(map);
    }
 
    /**
@@ -193,15 +285,7 @@ public class PathAddress implements Iterable<String>
     */
    public boolean accepts(PathTemplateFilter filter)
    {
-      FilteredAddress filtered = filter.filter(this);
-      if (filtered != null && filtered.isFiltered())
-      {
-         return filtered.matches();
-      }
-      else
-      {
-         return true;
-      }
+      return filter.accepts(this);
    }
 
    @Override
@@ -212,7 +296,7 @@ public class PathAddress implements Iterable<String>
 
    public int size()
    {
-      return pathList.size();
+      return size;
    }
 
    /**
@@ -220,7 +304,11 @@ public class PathAddress implements Iterable<String>
     */
    public PathAddress copy()
    {
-      return new PathAddress(new ArrayList<String>(pathList), new ArrayList<PathTemplateResolver>(resolvers));
+      PathAddress copy = (prefix == null) ? new PathAddress(segments, start, start + size) : new PathAddress(prefix, segment);
+      copy.resolvers = resolvers;
+      copy.bindings = bindings;
+
+      return copy;
    }
 
    @Override
@@ -230,39 +318,85 @@ public class PathAddress implements Iterable<String>
       if (o == null || getClass() != o.getClass()) return false;
 
       PathAddress that = (PathAddress) o;
+      if (size != that.size || hashCode() != that.hashCode()) return false;
 
-      return pathList.equals(that.pathList);
+      for (int i = 0; i < size; i++)
+      {
+         if (!get(i).equals(that.get(i))) return false;
+      }
+
+      return true;
    }
 
    @Override
    public int hashCode()
    {
-      return pathList.hashCode();
+      int h = hashCode;
+      if (h == 0 && size > 0)
+      {
+         if (prefix == null)
+         {
+            h = 1;
+            for (int i = start; i < start + size; i++)
+            {
+               h = 31 * h + segments[i].hashCode();
+            }
+         }
+         else
+         {
+            h = 31 * prefix.hashCode() + segment.hashCode();
+         }
+         hashCode = h;
+      }
+
+      return (size == 0) ? 1 : h;
    }
 
    @Override
    public String toString()
    {
-      Iterator<String> iterator = this.iterator();
-      StringBuilder sb = new StringBuilder("/");
-      while (iterator.hasNext())
+      String s = string;
+      if (s == null)
       {
-         sb.append(iterator.next());
-         if (iterator.hasNext()) sb.append("/");
+         if (prefix == null)
+         {
+            StringBuilder sb = new StringBuilder("/");
+            for (int i = start; i < start + size; i++)
+            {
+               if (i > start) sb.append("/");
+               sb.append(segments[i]);
+            }
+            s = sb.toString();
+         }
+         else
+         {
+            String prefixString = prefix.toString();
+            s = (prefix.size == 0) ? prefixString + segment : prefixString + "/" + segment;
+         }
+         string = s;
       }
 
-      return sb.toString();
+      return s;
    }
 
-   static List<String> split(String string, String regex)
+   /**
+    * Splits the string at each occurrence of the separator by scanning its characters, ignoring empty values and
+    * trimming the rest.
+    */
+   static List<String> split(String string, char separator)
    {
-      String[] split = string.split(regex);
-      List<String> trimmed = new ArrayList<String>(split.length);
-      for (String s : split)
+      List<String> trimmed = new ArrayList<String>();
+      int length = string.length();
+      int start = 0;
+      for (int i = 0; i <= length; i++)
       {
-         if (s != null && !s.equals(""))
+         if (i == length || string.charAt(i) == separator)
          {
-            trimmed.add(s.trim());
+            if (i > start)
+            {
+               trimmed.add(string.substring(start, i).trim());
+            }
+            start = i + 1;
          }
       }
 
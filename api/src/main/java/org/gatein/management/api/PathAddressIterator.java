@@ -23,6 +23,7 @@
 package org.gatein.management.api;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -32,31 +33,26 @@ public class PathAddressIterator implements Iterator<String>
 {
    public static final PathAddressIterator EMPTY = new PathAddressIterator(PathAddress.EMPTY_ADDRESS);
 
-   private PathAddress originalAddress;
-   private PathAddress currentAddress;
-   private Iterator<String> iterator;
+   private final PathAddress originalAddress;
+   private int cursor;
 
    public PathAddressIterator(PathAddress address)
    {
       this.originalAddress = address;
-      this.currentAddress = address;
-      this.iterator = address.pathList.listIterator();
    }
 
    @Override
    public boolean hasNext()
    {
-      return iterator.hasNext();
+      return cursor < originalAddress.size();
    }
 
    @Override
    public String next()
    {
-      if (iterator.hasNext())
-      {
-         currentAddress = currentAddress.subAddress(1);
-      }
-      return iterator.next();
+      if (!hasNext()) throw new NoSuchElementException();
+
+      return originalAddress.get(cursor++);
    }
 
    public PathAddress originalAddress()
@@ -64,9 +60,12 @@ public class PathAddressIterator implements Iterator<String>
       return originalAddress;
    }
 
+   /**
+    * @return view of the address remaining to be iterated.
+    */
    public PathAddress currentAddress()
    {
-      return currentAddress;
+      return (cursor == 0) ? originalAddress : originalAddress.subAddress(cursor);
    }
 
    @Override
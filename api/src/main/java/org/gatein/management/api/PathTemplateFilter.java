@@ -24,9 +24,10 @@ package org.gatein.management.api;
 
 import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,10 +46,47 @@ public abstract class PathTemplateFilter
 
    private static final String WILDCARD = "*";
 
+   // Filters are immutable, so the same attributes can share the parsed filter.
+   private static final int PARSED_FILTER_CACHE_SIZE = 64;
+   private static final Map<List<String>, PathTemplateFilter> PARSED_FILTERS = new LinkedHashMap<List<String>, PathTemplateFilter>(16, 0.75f, true)
+   {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<List<String>, PathTemplateFilter> eldest)
+      {
+         return size() > PARSED_FILTER_CACHE_SIZE;
+      }
+   };
+
    abstract FilteredAddress filter(PathAddress address);
 
+   boolean accepts(PathAddress address)
+   {
+      FilteredAddress filtered = filter(address);
+      if (filtered != null && filtered.isFiltered())
+      {
+         return filtered.matches();
+      }
+      else
+      {
+         return true;
+      }
+   }
+
    public abstract boolean hasPathTemplate(String pathTemplateName);
 
+   /**
+    * Whether this filter rejects the address and every address below it, whatever the path templates which are not
+    * yet resolved by the address resolve to. This allows a traversal of managed resources to skip subtrees which
+    * cannot match.
+    *
+    * @param address the address
+    * @return true if no address starting with this address is accepted by the filter
+    */
+   public boolean rejectsAll(PathAddress address)
+   {
+      return false;
+   }
+
    /**
     * Used to parse a attributes to a filter attribute format.
     *
@@ -61,9 +99,12 @@ public abstract class PathTemplateFilter
     *    <li><tt>foo:!foo-bar,foobar</tt> Filter an address to exclude path template's resolving to 'foo-bar' or 'foobar' </li>
     * </ul>
     *
+    * <p>Recently parsed filters are cached by their attributes, so parsing the same attributes again returns the same
+    * filter.</p>
+    *
     * @param attributes list of attribute expressions for filter. A null list or an empty list will return a filter that
     * will filter nothing.
-    * @return newly created filter based on attributes
+    * @return filter based on attributes
     * @throws ParseException if the attributes couldn't be parsed.
     */
    public static PathTemplateFilter parse(List<String> attributes) throws ParseException
@@ -73,10 +114,31 @@ public abstract class PathTemplateFilter
          return NO_OP_FILTER;
       }
 
+      List<String> key = new ArrayList<String>(attributes);
+      PathTemplateFilter filter;
+      synchronized (PARSED_FILTERS)
+      {
+         filter = PARSED_FILTERS.get(key);
+      }
+
+      if (filter == null)
+      {
+         filter = doParse(key);
+         synchronized (PARSED_FILTERS)
+         {
+            PARSED_FILTERS.put(key, filter);
+         }
+      }
+
+      return filter;
+   }
+
+   private static PathTemplateFilter doParse(List<String> attributes) throws ParseException
+   {
       Builder builder = null;
       for (String attribute : attributes)
       {
-         for (String attr : PathAddress.split(attribute, ";"))
+         for (String attr : PathAddress.split(attribute, ';'))
          {
             Matcher matcher = PATH_TEMPLATE_PATTERN.matcher(attr);
             if (matcher.matches())
@@ -92,7 +154,7 @@ public abstract class PathTemplateFilter
                }
 
                boolean exclusion = (matcher.group(2) != null);
-               List<String> expressions = PathAddress.split(matcher.group(3), ",");
+               List<String> expressions = PathAddress.split(matcher.group(3), ',');
                for (String expression : expressions)
                {
                   boolean wildcard = WILDCARD.equals(expression);
@@ -144,9 +206,26 @@ public abstract class PathTemplateFilter
    {
       private final List<Expression> expressions;
 
+      // Expressions compiled into a decision table per path template, in order of first appearance
+      private final TemplateTable[] tables;
+
       public SimpleFilter(List<Expression> expressions)
       {
          this.expressions = expressions;
+
+         Map<String, TemplateTable> tableMap = new LinkedHashMap<String, TemplateTable>();
+         for (int i = 0; i < expressions.size(); i++)
+         {
+            Expression expression = expressions.get(i);
+            TemplateTable table = tableMap.get(expression.templateName);
+            if (table == null)
+            {
+               table = new TemplateTable(expression.templateName);
+               tableMap.put(expression.templateName, table);
+            }
+            table.add(i, expression);
+         }
+         this.tables = tableMap.values().toArray(new TemplateTable[tableMap.size()]);
       }
 
       @Override
@@ -157,10 +236,9 @@ public abstract class PathTemplateFilter
             @Override
             public boolean isFiltered()
             {
-               for (Expression expression : expressions)
+               for (TemplateTable table : tables)
                {
-                  boolean filtered = expression.resolves(address);
-                  if (filtered) return true;
+                  if (address.resolvePathTemplate(table.templateName) != null) return true;
                }
 
                return false;
@@ -169,36 +247,65 @@ public abstract class PathTemplateFilter
             @Override
             public boolean matches()
             {
-               //TODO: Clean this logic up.
-               boolean overall = true;
-               Set<String> matchedTemplates = new HashSet<String>();
-               for (Expression expression : expressions)
-               {
-                  if (matchedTemplates.contains(expression.templateName)) continue;
+               return evaluate(address, false);
+            }
+         };
+      }
 
-                  boolean match = expression.match(address);
-                  if (match && expression.filterType == FilterType.exclusion && expression.resolves(address))
-                  {
-                     return false;
-                  }
-                  else if (expression.filterType == FilterType.exclusion)
-                  {
-                     overall = true;
-                  }
-                  else if (match && expression.resolves(address))
-                  {
-                     matchedTemplates.add(expression.templateName);
-                     overall = true;
-                  }
-                  else
-                  {
-                     overall = overall && match;
-                  }
-               }
+      @Override
+      boolean accepts(PathAddress address)
+      {
+         return evaluate(address, true);
+      }
 
-               return overall;
+      /**
+       * Evaluates the filter resolving each path template once. The decision of the expression evaluated last wins,
+       * unless a matching exclusion rejects the address.
+       */
+      private boolean evaluate(PathAddress address, boolean acceptUnfiltered)
+      {
+         boolean filtered = false;
+         int decision = TemplateTable.UNDECIDED;
+         for (TemplateTable table : tables)
+         {
+            String resolved = address.resolvePathTemplate(table.templateName);
+            if (resolved != null) filtered = true;
+
+            int tableDecision = table.decide(address, resolved);
+            if (tableDecision == TemplateTable.REJECTED) return false;
+            if (tableDecision > decision) decision = tableDecision;
+         }
+
+         if (acceptUnfiltered && !filtered) return true;
+
+         return decision == TemplateTable.UNDECIDED || TemplateTable.matches(decision);
+      }
+
+      @Override
+      public boolean rejectsAll(PathAddress address)
+      {
+         int decision = TemplateTable.UNDECIDED;
+         int unresolvedLast = TemplateTable.UNDECIDED;
+         for (TemplateTable table : tables)
+         {
+            // Expressions without a path template match the address itself, which changes below this address
+            if (table.templateName == null) return false;
+
+            String resolved = address.resolvePathTemplate(table.templateName);
+            if (resolved == null)
+            {
+               // May resolve to anything below this address, so any of its expressions may decide
+               unresolvedLast = Math.max(unresolvedLast, table.last);
             }
-         };
+            else
+            {
+               int tableDecision = table.decide(address, resolved);
+               if (tableDecision == TemplateTable.REJECTED) return true;
+               if (tableDecision > decision) decision = tableDecision;
+            }
+         }
+
+         return decision != TemplateTable.UNDECIDED && !TemplateTable.matches(decision) && unresolvedLast < TemplateTable.position(decision);
       }
 
       @Override
@@ -261,6 +368,12 @@ public abstract class PathTemplateFilter
          };
       }
 
+      @Override
+      boolean accepts(PathAddress address)
+      {
+         return true;
+      }
+
       @Override
       public boolean hasPathTemplate(String pathTemplateName)
       {
@@ -405,17 +518,156 @@ public abstract class PathTemplateFilter
       }
    }
 
+   /**
+    * Decision table for all expressions of a path template. Decisions are encoded as the position of the deciding
+    * expression within the filter, and whether it matched, so the decision of the expression evaluated last is the
+    * greatest.
+    */
+   private static class TemplateTable
+   {
+      private static final int UNDECIDED = -1;
+      private static final int REJECTED = -2;
+      private static final int NONE = Integer.MAX_VALUE;
+
+      private final String templateName;
+      private final Map<String, Integer> includes = new HashMap<String, Integer>();
+      private final Map<String, Integer> excludes = new HashMap<String, Integer>();
+      private int includeAll = NONE;
+      private int excludeAll = NONE;
+      private int last = UNDECIDED;
+      private boolean lastExclusion;
+      private int lastExclusionPosition = UNDECIDED;
+
+      // Only consulted for expressions without a path template, which match the address itself
+      private final List<Expression> expressions = new ArrayList<Expression>();
+      private final List<Integer> positions = new ArrayList<Integer>();
+
+      private TemplateTable(String templateName)
+      {
+         this.templateName = templateName;
+      }
+
+      private static int decision(int position, boolean matches)
+      {
+         return (position << 1) | (matches ? 1 : 0);
+      }
+
+      private static boolean matches(int decision)
+      {
+         return (decision & 1) == 1;
+      }
+
+      private static int position(int decision)
+      {
+         return decision >> 1;
+      }
+
+      private void add(int position, Expression expression)
+      {
+         boolean exclusion = (expression.filterType == FilterType.exclusion);
+         boolean wildcard = WILDCARD.equals(expression.value);
+         if (exclusion)
+         {
+            if (wildcard)
+            {
+               excludeAll = Math.min(excludeAll, position);
+            }
+            else if (!excludes.containsKey(expression.path))
+            {
+               excludes.put(expression.path, position);
+            }
+            lastExclusionPosition = position;
+         }
+         else
+         {
+            if (wildcard)
+            {
+               includeAll = Math.min(includeAll, position);
+            }
+            else if (!includes.containsKey(expression.path))
+            {
+               includes.put(expression.path, position);
+            }
+         }
+         last = position;
+         lastExclusion = exclusion;
+
+         expressions.add(expression);
+         positions.add(position);
+      }
+
+      private int decide(PathAddress address, String resolved)
+      {
+         if (resolved != null)
+         {
+            int included = Math.min(position(includes, resolved), includeAll);
+            int excluded = Math.min(position(excludes, resolved), excludeAll);
+
+            // Expressions after the first matching inclusion are not evaluated
+            if (excluded < included) return REJECTED;
+            if (included != NONE) return decision(included, true);
+
+            return decision(last, lastExclusion);
+         }
+         else if (templateName != null)
+         {
+            // Nothing to match against, so only exclusions decide
+            return (lastExclusionPosition == UNDECIDED) ? UNDECIDED : decision(lastExclusionPosition, true);
+         }
+         else
+         {
+            for (int i = expressions.size() - 1; i >= 0; i--)
+            {
+               Expression expression = expressions.get(i);
+               if (expression.filterType == FilterType.exclusion)
+               {
+                  return decision(positions.get(i), true);
+               }
+               else if (!expression.match(address))
+               {
+                  return decision(positions.get(i), false);
+               }
+            }
+
+            return UNDECIDED;
+         }
+      }
+
+      private static int position(Map<String, Integer> positions, String value)
+      {
+         Integer position = positions.get(value);
+         return (position == null) ? NONE : position;
+      }
+   }
+
    private static class Expression
    {
       private final String templateName;
       private final String value;
       private final FilterType filterType;
 
+      // Value as compared against the address, normalized once instead of on every match
+      private final String path;
+
       private Expression(String templateName, String value, FilterType filterType)
       {
          this.templateName = templateName;
          this.value = value;
          this.filterType = filterType;
+
+         if (value.length() == 0)
+         {
+            this.path = value;
+         }
+         else if (templateName == null)
+         {
+            this.path = (value.charAt(0) == '/') ? value : "/" + value;
+         }
+         else
+         {
+            // strip the leading slash because path template's don't match leading slashes
+            this.path = (value.charAt(0) == '/') ? value.substring(1) : value;
+         }
       }
 
       public boolean match(PathAddress address)
@@ -424,9 +676,6 @@ public abstract class PathTemplateFilter
 
          if (templateName == null)
          {
-            String path = value;
-            if (path.charAt(0) != '/') path = "/" + path;
-
             return path.equals(address.toString());
          }
          else
@@ -434,9 +683,6 @@ public abstract class PathTemplateFilter
             String resolved = address.resolvePathTemplate(templateName);
             if (resolved == null) return true; // we match because no path template matches
 
-            String path = value;
-            if (value.charAt(0) == '/') path = value.substring(1); // strip the leading slash because path template's don't match leading slashes
-
             return resolved.equals(path);
          }
       }
@@ -0,0 +1,84 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api;
+
+import org.gatein.management.api.operation.OperationHandler;
+
+import java.util.Map;
+
+/**
+ * Managed resource able to locate a resource and its operation in a single lookup, rather than walking the tree again
+ * for each of the lookups of {@link ManagedResource}.
+ *
+ * @version $Revision$
+ */
+public interface ResolvableManagedResource extends ManagedResource
+{
+   /**
+    * Resolves the managed resource and operation for a given address in a single lookup. Any path template variables
+    * matched while locating the resource are resolvable by the returned address.
+    *
+    * @param address address of the managed resource
+    * @param operationName name of the operation
+    * @return the resolution or null if no managed resource was found for the address.
+    */
+   Resolution resolve(PathAddress address, String operationName);
+
+   public static interface Resolution
+   {
+      /**
+       * @return the address which was resolved
+       */
+      PathAddress getAddress();
+
+      /**
+       * @return the managed resource located at the address
+       */
+      ManagedResource getResource();
+
+      /**
+       * @return the operation handler of the operation resolved, or null if the operation is not available for the resource.
+       */
+      OperationHandler getOperationHandler();
+
+      /**
+       * @return description of the operation resolved, or null if the operation is not available for the resource.
+       */
+      ManagedDescription getOperationDescription();
+
+      /**
+       * Retrieves an operation handler, registered or inherited, of the resolved resource.
+       *
+       * @param operationName name of the operation
+       * @return the operation handler or null if the operation is not available for the resource.
+       */
+      OperationHandler getOperationHandler(String operationName);
+
+      /**
+       * Description of all operations, registered or inherited, of the resolved resource.
+       *
+       * @return map of descriptions with the key being the operation name.
+       */
+      Map<String, ManagedDescription> getOperationDescriptions();
+   }
+}
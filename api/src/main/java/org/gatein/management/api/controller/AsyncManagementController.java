@@ -0,0 +1,50 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.controller;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Management controller also executing requests in the background, under a limit on the number of requests for the
+ * same operation executing at once.
+ * <p/>
+ * Callers choose which requests to execute in the background. The REST controller only does so for the operations
+ * named by its <code>gatein.management.rest.async-operations</code> property, none by default, and still waits for
+ * the response on the request thread, so it bounds how many requests of an operation run at once rather than freeing
+ * its threads. CLI commands, including SCP, execute all requests directly.
+ *
+ * @version $Revision$
+ */
+public interface AsyncManagementController extends ManagementController
+{
+   /**
+    * Executes a request in the background. Failures to locate the managed resource or of the operation are thrown by
+    * {@link Future#get()}, wrapped in an {@link java.util.concurrent.ExecutionException}.
+    *
+    * @param request The managed request holding the information about the request.
+    * @return future of the managed response
+    * @throws RejectedExecutionException if too many requests for the same operation are already waiting to execute
+    */
+   Future<ManagedResponse> executeAsync(ManagedRequest request) throws RejectedExecutionException;
+}
@@ -0,0 +1,345 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.controller;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Buffers data whose size must be known before it is sent, like the result of a {@link ManagedResponse} sent over
+ * SCP. Data is kept in pooled heap chunks until it exceeds the threshold, and is then moved to a temporary file. Once
+ * written, the data can be replayed once, after which the chunks are returned to the pool and the file is deleted.
+ * <p/>
+ * This class is not thread safe.
+ *
+ * @version $Revision$
+ */
+public class SpoolingOutputStream extends OutputStream
+{
+   public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+   private static final int CHUNK_SIZE = 32 * 1024;
+   private static final int MAX_POOLED_CHUNKS = 64;
+   private static final Queue<byte[]> pool = new ConcurrentLinkedQueue<byte[]>();
+   private static final AtomicInteger pooled = new AtomicInteger();
+
+   private final long threshold;
+   private final List<byte[]> chunks = new ArrayList<byte[]>();
+   private int position;
+   private long size;
+   private File file;
+   private OutputStream fileStream;
+   private boolean closed;
+   private boolean replayed;
+
+   public SpoolingOutputStream()
+   {
+      this(DEFAULT_THRESHOLD);
+   }
+
+   /**
+    * @param threshold number of bytes kept in memory, beyond which data is moved to a temporary file
+    */
+   public SpoolingOutputStream(long threshold)
+   {
+      if (threshold < 0) throw new IllegalArgumentException("threshold is negative");
+
+      this.threshold = threshold;
+   }
+
+   @Override
+   public void write(int b) throws IOException
+   {
+      ensureOpen();
+      if (fileStream == null && size + 1 > threshold) spill();
+
+      if (fileStream != null)
+      {
+         fileStream.write(b);
+      }
+      else
+      {
+         if (chunks.isEmpty() || position == CHUNK_SIZE) addChunk();
+         chunks.get(chunks.size() - 1)[position++] = (byte) b;
+      }
+      size++;
+   }
+
+   @Override
+   public void write(byte[] b, int off, int len) throws IOException
+   {
+      if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+
+      ensureOpen();
+      if (fileStream == null && size + len > threshold) spill();
+
+      if (fileStream != null)
+      {
+         fileStream.write(b, off, len);
+         size += len;
+         return;
+      }
+
+      while (len > 0)
+      {
+         if (chunks.isEmpty() || position == CHUNK_SIZE) addChunk();
+
+         int count = Math.min(len, CHUNK_SIZE - position);
+         System.arraycopy(b, off, chunks.get(chunks.size() - 1), position, count);
+         position += count;
+         off += count;
+         len -= count;
+         size += count;
+      }
+   }
+
+   @Override
+   public void flush() throws IOException
+   {
+      if (fileStream != null) fileStream.flush();
+   }
+
+   @Override
+   public void close() throws IOException
+   {
+      if (closed) return;
+
+      closed = true;
+      if (fileStream != null) fileStream.close();
+   }
+
+   /**
+    * @return number of bytes written
+    */
+   public long size()
+   {
+      return size;
+   }
+
+   /**
+    * @return true if the data was moved to a temporary file
+    */
+   public boolean isSpooledToFile()
+   {
+      return file != null;
+   }
+
+   /**
+    * Closes this stream and replays the data written. Closing the input stream returned releases the data.
+    *
+    * @return stream reading the data written
+    * @throws IOException if an exception occurs opening the temporary file
+    * @throws IllegalStateException if the data was already replayed
+    */
+   public InputStream getInputStream() throws IOException
+   {
+      if (replayed) throw new IllegalStateException("Data was already replayed.");
+
+      close();
+      replayed = true;
+
+      if (file != null)
+      {
+         return new FileInputStream(file)
+         {
+            @Override
+            public void close() throws IOException
+            {
+               try
+               {
+                  super.close();
+               }
+               finally
+               {
+                  release();
+               }
+            }
+         };
+      }
+      else
+      {
+         return new ChunkInputStream();
+      }
+   }
+
+   /**
+    * Closes this stream, writes the data written to the output stream given and releases it.
+    *
+    * @param outputStream the stream to write the data to
+    * @throws IOException if an exception occurs reading or writing the data
+    * @throws IllegalStateException if the data was already replayed
+    */
+   public void writeTo(OutputStream outputStream) throws IOException
+   {
+      InputStream in = getInputStream();
+      try
+      {
+         byte[] buffer = new byte[CHUNK_SIZE];
+         int read;
+         while ((read = in.read(buffer)) != -1)
+         {
+            outputStream.write(buffer, 0, read);
+         }
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   /**
+    * Discards the data written, returning heap chunks to the pool and deleting the temporary file.
+    */
+   public void release()
+   {
+      closed = true;
+      releaseChunks();
+
+      if (fileStream != null)
+      {
+         try
+         {
+            fileStream.close();
+         }
+         catch (IOException ignore)
+         {
+         }
+         fileStream = null;
+      }
+
+      if (file != null)
+      {
+         if (!file.delete()) file.deleteOnExit();
+         file = null;
+      }
+   }
+
+   private void ensureOpen() throws IOException
+   {
+      if (closed) throw new IOException("Stream is closed.");
+   }
+
+   private void addChunk()
+   {
+      byte[] chunk = pool.poll();
+      if (chunk == null)
+      {
+         chunk = new byte[CHUNK_SIZE];
+      }
+      else
+      {
+         pooled.decrementAndGet();
+      }
+
+      chunks.add(chunk);
+      position = 0;
+   }
+
+   private void releaseChunks()
+   {
+      for (byte[] chunk : chunks)
+      {
+         if (pooled.incrementAndGet() <= MAX_POOLED_CHUNKS)
+         {
+            pool.offer(chunk);
+         }
+         else
+         {
+            pooled.decrementAndGet();
+         }
+      }
+
+      chunks.clear();
+      position = 0;
+   }
+
+   private void spill() throws IOException
+   {
+      file = File.createTempFile("gatein-spool", ".tmp");
+      fileStream = new BufferedOutputStream(new FileOutputStream(file), CHUNK_SIZE);
+
+      for (int i = 0; i < chunks.size(); i++)
+      {
+         fileStream.write(chunks.get(i), 0, (i == chunks.size() - 1) ? position : CHUNK_SIZE);
+      }
+
+      releaseChunks();
+   }
+
+   private class ChunkInputStream extends InputStream
+   {
+      private long read;
+      private boolean closed;
+
+      @Override
+      public int read() throws IOException
+      {
+         if (closed) throw new IOException("Stream is closed.");
+         if (read == size) return -1;
+
+         int b = chunks.get((int) (read / CHUNK_SIZE))[(int) (read % CHUNK_SIZE)] & 0xff;
+         read++;
+         return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException
+      {
+         if (closed) throw new IOException("Stream is closed.");
+         if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+         if (len == 0) return 0;
+         if (read == size) return -1;
+
+         int offset = (int) (read % CHUNK_SIZE);
+         int count = (int) Math.min(Math.min(len, CHUNK_SIZE - offset), size - read);
+         System.arraycopy(chunks.get((int) (read / CHUNK_SIZE)), offset, b, off, count);
+         read += count;
+         return count;
+      }
+
+      @Override
+      public int available() throws IOException
+      {
+         return (int) Math.min(Integer.MAX_VALUE, size - read);
+      }
+
+      @Override
+      public void close() throws IOException
+      {
+         if (closed) return;
+
+         closed = true;
+         release();
+      }
+   }
+}
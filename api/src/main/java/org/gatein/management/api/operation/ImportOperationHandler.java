@@ -0,0 +1,65 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.operation;
+
+import org.gatein.management.api.exceptions.OperationException;
+import org.gatein.management.api.exceptions.ResourceNotFoundException;
+import org.gatein.management.api.operation.model.ImportResourceModel;
+import org.gatein.management.api.operation.model.ImportResultModel;
+
+/**
+ * Update operation handler importing an {@link ImportResourceModel}. The delta attribute of the operation selects a
+ * delta import, the operation completes with the {@link ImportResultModel} of the entries dispatched to import tasks,
+ * and the archive is released once the import completes.
+ *
+ * @version $Revision$
+ */
+public abstract class ImportOperationHandler extends UpdateOperationHandler<ImportResourceModel>
+{
+   @Override
+   protected void execute(OperationContext operationContext, ResultHandler resultHandler, ImportResourceModel data) throws ResourceNotFoundException, OperationException
+   {
+      data.setDelta(Boolean.parseBoolean(operationContext.getAttributes().getValue(ImportResourceModel.DELTA_ATTRIBUTE)));
+      try
+      {
+         execute(operationContext, data);
+      }
+      catch (OperationException e)
+      {
+         ImportResultModel result = data.getResult();
+         if (result == null) throw e;
+
+         throw new OperationException(e.getOperationName(), e.getMessage() + " (" + result + ")", e);
+      }
+      finally
+      {
+         data.release();
+      }
+
+      ImportResultModel result = data.getResult();
+      if (result != null)
+      {
+         resultHandler.completed(result);
+      }
+   }
+}
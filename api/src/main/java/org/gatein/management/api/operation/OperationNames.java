@@ -40,4 +40,6 @@ public class OperationNames
    public static final String READ_CONFIG_AS_XML = "read-config-as-xml";
    public static final String EXPORT_RESOURCE = "export-resource";
    public static final String IMPORT_RESOURCE = "import-resource";
+
+   public static final String READ_STATUS = "read-status";
 }
@@ -25,6 +25,7 @@ package org.gatein.management.api.operation;
 import org.gatein.management.api.PathAddress;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -33,20 +34,39 @@ import java.util.List;
  */
 public abstract class StepResultHandler<T> extends TypedResultHandler<T>
 {
-   private List<T> results;
+   private final List<T> results;
+   private final ResultSink<T> sink;
    private PathAddress currentAddress;
 
    protected StepResultHandler(PathAddress address)
+   {
+      this(address, null);
+   }
+
+   /**
+    * @param address address of the first step
+    * @param sink sink receiving results as they complete, in which case they are not collected by this handler
+    */
+   protected StepResultHandler(PathAddress address, ResultSink<T> sink)
    {
       this.currentAddress = address;
-      results = new ArrayList<T>();
+      this.sink = sink;
+      results = (sink == null) ? new ArrayList<T>() : Collections.<T>emptyList();
    }
 
    @Override
    protected void doCompleted(T result)
    {
       if (result == null) throw new IllegalArgumentException("result is null");
-      results.add(result);
+
+      if (sink != null)
+      {
+         sink.accept(result);
+      }
+      else
+      {
+         results.add(result);
+      }
    }
 
    public StepResultHandler<T> next(PathAddress address)
@@ -55,6 +75,9 @@ public abstract class StepResultHandler<T> extends TypedResultHandler<T>
       return this;
    }
 
+   /**
+    * @return results collected, which is always empty if results are passed to a sink
+    */
    public List<T> getResults()
    {
       return results;
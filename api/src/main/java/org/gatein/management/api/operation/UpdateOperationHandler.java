@@ -50,9 +50,10 @@ public abstract class UpdateOperationHandler<T> implements OperationHandler
                " at address " + operationContext.getAddress());
       }
 
+      T data;
       try
       {
-         execute(operationContext, marshaller.unmarshal(attachment.getStream()));
+         data = marshaller.unmarshal(attachment.getStream());
       }
       catch (BindingException e)
       {
@@ -60,6 +61,17 @@ public abstract class UpdateOperationHandler<T> implements OperationHandler
             "Exception unmarshalling data for type " + type + " and content type " + operationContext.getContentType() +
                " at address " + operationContext.getAddress(), e);
       }
+
+      execute(operationContext, resultHandler, data);
+   }
+
+   /**
+    * Executes the update once the data has been unmarshalled. Subclasses handling a particular type of data may
+    * override this to prepare the data or to complete the operation with a result.
+    */
+   protected void execute(OperationContext operationContext, ResultHandler resultHandler, T data) throws ResourceNotFoundException, OperationException
+   {
+      execute(operationContext, data);
    }
 
    protected abstract void execute(OperationContext operationContext, T data) throws ResourceNotFoundException, OperationException;
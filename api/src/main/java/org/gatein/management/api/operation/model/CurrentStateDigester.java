@@ -0,0 +1,45 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.operation.model;
+
+import java.io.IOException;
+
+/**
+ * Implemented by import tasks supporting delta imports. In a delta import, an entry whose hash is the hash of the
+ * current state it would replace is skipped rather than imported.
+ *
+ * @version $Revision$
+ */
+public interface CurrentStateDigester
+{
+   /**
+    * Hash of the current state an entry would replace. This is typically computed by
+    * {@link ExportManifest#digest(ExportTask)} with the export task exporting that state as the entry, so it is the
+    * hash the entry has when nothing changed.
+    *
+    * @param entry name of the entry
+    * @return hash of the current state, or null if there is none
+    * @throws IOException if the current state could not be read
+    */
+   String getCurrentHash(String entry) throws IOException;
+}
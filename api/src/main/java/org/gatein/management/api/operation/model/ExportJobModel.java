@@ -0,0 +1,144 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.operation.model;
+
+import org.gatein.management.api.PathAddress;
+
+/**
+ * Status of an export running in the background, whose archive is downloaded once the export completed.
+ *
+ * @version $Revision$
+ */
+public class ExportJobModel
+{
+   /**
+    * Name of the managed resource whose children are the export jobs.
+    */
+   public static final String RESOURCE_NAME = "export-jobs";
+
+   public static enum Status
+   {
+      RUNNING, COMPLETED, FAILED
+   }
+
+   private final String id;
+   private final PathAddress address;
+   private final Status status;
+   private final int taskCount;
+   private final int completedTaskCount;
+   private final long bytesWritten;
+   private final int prunedResourceCount;
+   private final String failureDescription;
+
+   public ExportJobModel(String id, PathAddress address, Status status, int taskCount, int completedTaskCount, long bytesWritten, int prunedResourceCount, String failureDescription)
+   {
+      if (id == null) throw new IllegalArgumentException("id is null");
+      if (status == null) throw new IllegalArgumentException("status is null");
+
+      this.id = id;
+      this.address = address;
+      this.status = status;
+      this.taskCount = taskCount;
+      this.completedTaskCount = completedTaskCount;
+      this.bytesWritten = bytesWritten;
+      this.prunedResourceCount = prunedResourceCount;
+      this.failureDescription = failureDescription;
+   }
+
+   public String getId()
+   {
+      return id;
+   }
+
+   /**
+    * @return address of the exported resource
+    */
+   public PathAddress getAddress()
+   {
+      return address;
+   }
+
+   public Status getStatus()
+   {
+      return status;
+   }
+
+   /**
+    * @return number of export tasks of the archive, or -1 while the resources to export are still being traversed.
+    */
+   public int getTaskCount()
+   {
+      return taskCount;
+   }
+
+   public int getCompletedTaskCount()
+   {
+      return completedTaskCount;
+   }
+
+   /**
+    * @return number of bytes of the archive written so far
+    */
+   public long getBytesWritten()
+   {
+      return bytesWritten;
+   }
+
+   /**
+    * @return number of resources not traversed because the filter rejected every export below them, known once the
+    * resources to export were traversed.
+    */
+   public int getPrunedResourceCount()
+   {
+      return prunedResourceCount;
+   }
+
+   /**
+    * @return the reason the export failed, or null if it did not fail.
+    */
+   public String getFailureDescription()
+   {
+      return failureDescription;
+   }
+
+   @Override
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder();
+      sb.append("Export of ").append(address).append(' ').append(status.name().toLowerCase());
+      sb.append(", ").append(completedTaskCount);
+      if (taskCount >= 0) sb.append('/').append(taskCount);
+      sb.append(" task(s) completed");
+      sb.append(", ").append(bytesWritten).append(" byte(s) written");
+      if (prunedResourceCount > 0)
+      {
+         sb.append(", ").append(prunedResourceCount).append(" resource(s) pruned by the filter");
+      }
+      if (failureDescription != null)
+      {
+         sb.append(": ").append(failureDescription);
+      }
+
+      return sb.toString();
+   }
+}
@@ -0,0 +1,293 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.operation.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Manifest of an export archive, recording the name, size and SHA-1 hash of each exported entry. An incremental export
+ * only writes the entries which changed since a previous manifest, and lists the entries deleted since.
+ * <p/>
+ * The manifest is written as text, one line per entry:
+ * <pre>
+ * token [hash of the manifest entries]
+ * entry [hash] [size] [name]
+ * deleted [name]
+ * </pre>
+ *
+ * @version $Revision$
+ */
+public class ExportManifest
+{
+   /**
+    * Name of the manifest entry in an export archive.
+    */
+   public static final String ENTRY_NAME = "META-INF/gatein-export.manifest";
+
+   private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+   private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+   private final List<String> deletions = new ArrayList<String>();
+   private String token;
+
+   public void addEntry(String name, long size, String hash)
+   {
+      entries.put(name, new Entry(name, size, hash));
+      token = null;
+   }
+
+   public void addDeletion(String name)
+   {
+      deletions.add(name);
+   }
+
+   public Entry getEntry(String name)
+   {
+      return entries.get(name);
+   }
+
+   public Collection<Entry> getEntries()
+   {
+      return Collections.unmodifiableCollection(entries.values());
+   }
+
+   public List<String> getDeletions()
+   {
+      return Collections.unmodifiableList(deletions);
+   }
+
+   /**
+    * Whether the entry is recorded in this manifest with the same size and hash.
+    * @param name name of the entry
+    * @param size size of the entry
+    * @param hash hash of the entry
+    * @return true if the entry has not changed since this manifest
+    */
+   public boolean isUnchanged(String name, long size, String hash)
+   {
+      Entry entry = entries.get(name);
+      return entry != null && entry.size == size && entry.hash.equals(hash);
+   }
+
+   /**
+    * @return token identifying the entries of this manifest, which is the hash of its entries.
+    */
+   public String getToken()
+   {
+      if (token == null)
+      {
+         MessageDigest digest = newDigest();
+         for (Entry entry : entries.values())
+         {
+            digest.update(utf8(entry.toString()));
+            digest.update((byte) '\n');
+         }
+         token = toHex(digest.digest());
+      }
+
+      return token;
+   }
+
+   @Override
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder();
+      sb.append("token ").append(getToken()).append('\n');
+      for (Entry entry : entries.values())
+      {
+         sb.append(entry).append('\n');
+      }
+      for (String deletion : deletions)
+      {
+         sb.append("deleted ").append(deletion).append('\n');
+      }
+
+      return sb.toString();
+   }
+
+   /**
+    * Parses a manifest from its text representation.
+    * @param manifest the manifest as written in an export archive
+    * @return the manifest
+    * @throws ParseException if the manifest could not be parsed
+    */
+   public static ExportManifest parse(String manifest) throws ParseException
+   {
+      ExportManifest result = new ExportManifest();
+      BufferedReader reader = new BufferedReader(new StringReader(manifest));
+      int lineNumber = 0;
+      try
+      {
+         String line;
+         while ((line = reader.readLine()) != null)
+         {
+            lineNumber++;
+            if (line.length() == 0 || line.startsWith("token ")) continue;
+
+            if (line.startsWith("entry "))
+            {
+               int hashEnd = line.indexOf(' ', 6);
+               int sizeEnd = (hashEnd == -1) ? -1 : line.indexOf(' ', hashEnd + 1);
+               if (sizeEnd == -1) throw new ParseException("Invalid manifest entry at line " + lineNumber, lineNumber);
+
+               long size;
+               try
+               {
+                  size = Long.parseLong(line.substring(hashEnd + 1, sizeEnd));
+               }
+               catch (NumberFormatException e)
+               {
+                  throw new ParseException("Invalid size of manifest entry at line " + lineNumber, lineNumber);
+               }
+               result.addEntry(line.substring(sizeEnd + 1), size, line.substring(6, hashEnd));
+            }
+            else if (line.startsWith("deleted "))
+            {
+               result.addDeletion(line.substring(8));
+            }
+            else
+            {
+               throw new ParseException("Invalid manifest line " + lineNumber, lineNumber);
+            }
+         }
+      }
+      catch (IOException e)
+      {
+         // Can't happen reading a string
+         throw new RuntimeException(e);
+      }
+
+      return result;
+   }
+
+   /**
+    * Hash of the entry exported by an export task, as recorded in a manifest, without writing the entry anywhere.
+    *
+    * @param task export task exporting the entry
+    * @return SHA-1 hash of the entry
+    * @throws IOException if the export task fails
+    */
+   public static String digest(ExportTask task) throws IOException
+   {
+      DigestOutputStream out = new DigestOutputStream(new OutputStream()
+      {
+         @Override
+         public void write(int b)
+         {
+         }
+
+         @Override
+         public void write(byte[] b, int off, int len)
+         {
+         }
+      }, newDigest());
+
+      task.export(out);
+      return toHex(out.getMessageDigest().digest());
+   }
+
+   public static MessageDigest newDigest()
+   {
+      try
+      {
+         return MessageDigest.getInstance("SHA-1");
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         throw new RuntimeException("SHA-1 is not available", e);
+      }
+   }
+
+   public static String toHex(byte[] bytes)
+   {
+      char[] chars = new char[bytes.length * 2];
+      for (int i = 0; i < bytes.length; i++)
+      {
+         chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+         chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+      }
+
+      return new String(chars);
+   }
+
+   private static byte[] utf8(String string)
+   {
+      try
+      {
+         return string.getBytes("UTF-8");
+      }
+      catch (UnsupportedEncodingException e)
+      {
+         throw new RuntimeException(e);
+      }
+   }
+
+   public static class Entry
+   {
+      private final String name;
+      private final long size;
+      private final String hash;
+
+      private Entry(String name, long size, String hash)
+      {
+         this.name = name;
+         this.size = size;
+         this.hash = hash;
+      }
+
+      public String getName()
+      {
+         return name;
+      }
+
+      public long getSize()
+      {
+         return size;
+      }
+
+      public String getHash()
+      {
+         return hash;
+      }
+
+      @Override
+      public String toString()
+      {
+         return "entry " + hash + " " + size + " " + name;
+      }
+   }
+}
@@ -22,8 +22,10 @@
 
 package org.gatein.management.api.operation.model;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -32,7 +34,23 @@ import java.util.List;
  */
 public class ExportResourceModel
 {
+   /**
+    * Compression level letting the archive use its default compression.
+    */
+   public static final int DEFAULT_COMPRESSION = -1;
+
+   /**
+    * Compression level storing entries in the archive without compression.
+    */
+   public static final int STORED = -2;
+
    private List<ExportTask> tasks;
+   private Iterator<ExportTask> taskStream;
+   private int prunedResourceCount;
+   private int compressionLevel = DEFAULT_COMPRESSION;
+   private boolean manifest;
+   private ExportManifest previousManifest;
+   private boolean deterministic;
 
    public ExportResourceModel(ExportTask...tasks)
    {
@@ -45,13 +63,143 @@ public class ExportResourceModel
       this.tasks = tasks;
    }
 
+   /**
+    * Creates a model whose tasks are produced as they are iterated, so they can be written to the archive while the
+    * tasks that follow are still being produced. The tasks of such a model can only be iterated once.
+    *
+    * @param taskStream iterator producing the export tasks
+    */
+   public ExportResourceModel(Iterator<ExportTask> taskStream)
+   {
+      if (taskStream == null) throw new IllegalArgumentException("taskStream is null");
+      this.tasks = new ArrayList<ExportTask>();
+      this.taskStream = taskStream;
+   }
+
+   /**
+    * Tasks of this model. If the tasks are produced as they are iterated, this produces all remaining tasks, which
+    * are then kept by this model.
+    *
+    * @return the export tasks
+    * @throws IllegalStateException if the tasks were already iterated by {@link #getTaskIterator()}
+    */
    public List<ExportTask> getTasks()
    {
+      drainTaskStream();
       return Collections.unmodifiableList(tasks);
    }
 
+   /**
+    * Iterates the tasks of this model, producing them as they are iterated if this model was created with a task
+    * stream.
+    *
+    * @return iterator of the export tasks
+    * @throws IllegalStateException if the tasks were already iterated
+    */
+   public Iterator<ExportTask> getTaskIterator()
+   {
+      if (taskStream == null) return getTasks().iterator();
+
+      Iterator<ExportTask> iterator = taskStream;
+      taskStream = null;
+      tasks = null;
+      return iterator;
+   }
+
+   /**
+    * @return true if the tasks are produced as they are iterated, and haven't been iterated yet.
+    */
+   public boolean isStreaming()
+   {
+      return taskStream != null;
+   }
+
    public void addTask(ExportTask task)
    {
+      drainTaskStream();
       tasks.add(task);
    }
+
+   /**
+    * @return true if the archive only depends on the content exported, so that exporting the same content twice gives
+    * the same archive.
+    */
+   public boolean isDeterministic()
+   {
+      return deterministic;
+   }
+
+   public void setDeterministic(boolean deterministic)
+   {
+      this.deterministic = deterministic;
+   }
+
+   private void drainTaskStream()
+   {
+      if (tasks == null) throw new IllegalStateException("Tasks were already iterated.");
+
+      if (taskStream != null)
+      {
+         while (taskStream.hasNext())
+         {
+            tasks.add(taskStream.next());
+         }
+         taskStream = null;
+      }
+   }
+
+   /**
+    * @return number of resources whose subtree was skipped during export because the filter could not match it.
+    */
+   public int getPrunedResourceCount()
+   {
+      return prunedResourceCount;
+   }
+
+   public void setPrunedResourceCount(int prunedResourceCount)
+   {
+      this.prunedResourceCount = prunedResourceCount;
+   }
+
+   /**
+    * @return compression level of the archive, from 0 (no compression) to 9 (best compression), or one of
+    * {@link #DEFAULT_COMPRESSION} and {@link #STORED}.
+    */
+   public int getCompressionLevel()
+   {
+      return compressionLevel;
+   }
+
+   public void setCompressionLevel(int compressionLevel)
+   {
+      if (compressionLevel < STORED || compressionLevel > 9) throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+
+      this.compressionLevel = compressionLevel;
+   }
+
+   /**
+    * @return true if the archive includes an {@link ExportManifest}.
+    */
+   public boolean isManifest()
+   {
+      return manifest || previousManifest != null;
+   }
+
+   public void setManifest(boolean manifest)
+   {
+      this.manifest = manifest;
+   }
+
+   /**
+    * @return manifest of a previous export, in which case only entries which changed since are written to the archive.
+    */
+   public ExportManifest getPreviousManifest()
+   {
+      return previousManifest;
+   }
+
+   public void setPreviousManifest(ExportManifest previousManifest)
+   {
+      this.previousManifest = previousManifest;
+   }
 }
@@ -0,0 +1,101 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.operation.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+/**
+ * Archive uploaded for an import, spooled once so its entries can be read in any order. Handlers extending
+ * {@link org.gatein.management.api.operation.ImportOperationHandler} can read entries directly, or dispatch them to an
+ * {@link ImportTask} or a {@link TwoPhaseImportTask}. The handler releases the archive once the operation completes.
+ * <p/>
+ * In a delta import, entries dispatched to a task implementing {@link CurrentStateDigester} are skipped when their
+ * hash is the hash of the current state they would replace.
+ *
+ * @version $Revision$
+ */
+public interface ImportResourceModel
+{
+   /**
+    * Name of the boolean operation attribute selecting a delta import.
+    */
+   String DELTA_ATTRIBUTE = "delta";
+
+   /**
+    * @return names of the entries of the archive in archive order, excluding directories and the export manifest
+    */
+   Set<String> getEntries();
+
+   /**
+    * @param entry name of the entry
+    * @return stream reading the content of the entry, or null if the archive has no such entry
+    * @throws IOException if the entry could not be read
+    */
+   InputStream getEntryStream(String entry) throws IOException;
+
+   /**
+    * Hash of an entry, taken from the manifest of the archive when it has one, or computed from the entry otherwise.
+    *
+    * @param entry name of the entry
+    * @return SHA-1 hash of the entry as computed by {@link ExportManifest}, or null if the archive has no such entry
+    * @throws IOException if the entry could not be read
+    */
+   String getEntryHash(String entry) throws IOException;
+
+   boolean isDelta();
+
+   void setDelta(boolean delta);
+
+   /**
+    * Dispatches each entry to the import task. Entries may be imported concurrently, in which case this returns once
+    * all entries have been imported, or fails with the first failure once the entries already running completed, the
+    * entries not yet started being skipped.
+    *
+    * @param task task importing each entry
+    * @throws IOException if an entry could not be read or imported
+    */
+   void importEntries(ImportTask task) throws IOException;
+
+   /**
+    * Validates all entries before applying any, as described by {@link TwoPhaseImportTask}. Entries may be validated
+    * concurrently, and the first entry failing validation fails the import without waiting for the other entries.
+    * The data parsed from all entries is held until the entries are applied.
+    *
+    * @param task task validating and applying each entry
+    * @param <T> type of the data parsed from an entry
+    * @throws IOException if an entry could not be read, validated or applied
+    */
+   <T> void importEntries(TwoPhaseImportTask<T> task) throws IOException;
+
+   /**
+    * @return outcome of the entries dispatched to import tasks so far, or null if no entry was dispatched
+    */
+   ImportResultModel getResult();
+
+   /**
+    * Releases the spooled archive. Entries can no longer be read afterwards.
+    */
+   void release();
+}
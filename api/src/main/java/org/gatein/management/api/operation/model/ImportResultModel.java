@@ -0,0 +1,72 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.operation.model;
+
+/**
+ * Outcome of the entries of an {@link ImportResourceModel} dispatched to import tasks.
+ *
+ * @version $Revision$
+ */
+public class ImportResultModel
+{
+   private final int appliedCount;
+   private final int skippedCount;
+   private final int failedCount;
+
+   public ImportResultModel(int appliedCount, int skippedCount, int failedCount)
+   {
+      this.appliedCount = appliedCount;
+      this.skippedCount = skippedCount;
+      this.failedCount = failedCount;
+   }
+
+   /**
+    * @return number of entries imported
+    */
+   public int getAppliedCount()
+   {
+      return appliedCount;
+   }
+
+   /**
+    * @return number of entries skipped, either unchanged in a delta import or skipped by the import task
+    */
+   public int getSkippedCount()
+   {
+      return skippedCount;
+   }
+
+   /**
+    * @return number of entries which failed to import
+    */
+   public int getFailedCount()
+   {
+      return failedCount;
+   }
+
+   @Override
+   public String toString()
+   {
+      return appliedCount + " entry(ies) applied, " + skippedCount + " skipped, " + failedCount + " failed";
+   }
+}
@@ -0,0 +1,65 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.operation.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Imports the entries of an {@link ImportResourceModel} in two phases. All entries are first parsed and validated,
+ * possibly concurrently, and only applied once every entry has been validated, so a malformed entry fails the import
+ * before anything was applied.
+ *
+ * @param <T> type of the data parsed from an entry
+ * @version $Revision$
+ */
+public interface TwoPhaseImportTask<T>
+{
+   /**
+    * Parses and validates an entry. This may be called concurrently for different entries, and must not apply
+    * anything.
+    *
+    * @param entry name of the entry
+    * @param inputStream content of the entry
+    * @return data parsed from the entry, or null to skip the entry
+    * @throws IOException if the entry could not be read, or is not valid
+    */
+   T validate(String entry, InputStream inputStream) throws IOException;
+
+   /**
+    * @param entry name of the entry
+    * @param data data parsed from the entry
+    * @return order in which the entry is applied. Entries of a lower order are applied first, and entries of the same
+    * order are applied in archive order.
+    */
+   int getOrder(String entry, T data);
+
+   /**
+    * Applies the data parsed from an entry. Entries are applied one after another on the thread importing the entries.
+    *
+    * @param entry name of the entry
+    * @param data data parsed from the entry
+    * @throws IOException if the entry could not be applied
+    */
+   void apply(String entry, T data) throws IOException;
+}
@@ -24,6 +24,8 @@ package org.gatein.management.api;
 
 import org.junit.Test;
 
+import java.util.Collections;
+
 import static org.junit.Assert.*;
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -82,6 +84,38 @@ public class PathAddressTest
       assertEquals(PathAddress.pathAddress("three"), sub2);
    }
    
+   @Test
+   public void testSubAddressView()
+   {
+      PathAddress address = PathAddress.pathAddress("one", "two", "three", "four");
+      PathAddress sub = address.subAddress(1, 3).subAddress(1);
+      assertEquals(PathAddress.pathAddress("three"), sub);
+      assertEquals("three", sub.get(0));
+      assertEquals("three", sub.getLastElement());
+      assertEquals("/three", sub.toString());
+      assertEquals(PathAddress.pathAddress("three").hashCode(), sub.hashCode());
+      assertEquals(PathAddress.pathAddress("three", "five"), sub.append("five"));
+      assertEquals(PathAddress.EMPTY_ADDRESS, address.subAddress(4));
+
+      try
+      {
+         sub.get(1);
+         fail();
+      }
+      catch (IndexOutOfBoundsException e)
+      {
+      }
+
+      try
+      {
+         address.subAddress(5);
+         fail();
+      }
+      catch (IndexOutOfBoundsException e)
+      {
+      }
+   }
+
    @Test
    public void testAddressCopy()
    {
@@ -89,4 +123,61 @@ public class PathAddressTest
       assertEquals(address, address.copy());
       assertFalse(address == address.copy());
    }
+
+   @Test
+   public void testPathTemplateBindings()
+   {
+      PathAddress address = PathAddress.pathAddress("one", "two");
+      assertTrue(address.getPathTemplateBindings().isEmpty());
+
+      address.addPathTemplateBindings(Collections.singletonMap("foo", "one"));
+      address.addPathTemplateBindings(Collections.singletonMap("bar", "two"));
+      assertEquals("one", address.resolvePathTemplate("foo"));
+      assertEquals("two", address.resolvePathTemplate("bar"));
+      assertEquals(2, address.getPathTemplateBindings().size());
+
+      PathAddress child = address.append("three");
+      assertEquals("one", child.resolvePathTemplate("foo"));
+      assertEquals("one", address.copy().resolvePathTemplate("foo"));
+
+      child.addPathTemplateBindings(Collections.singletonMap("foo", "three"));
+      assertEquals("three", child.resolvePathTemplate("foo"));
+      assertEquals("one", address.resolvePathTemplate("foo"));
+   }
+
+   @Test
+   public void testAppendSharesPrefix()
+   {
+      PathAddress parent = PathAddress.pathAddress("one", "two");
+      PathAddress first = parent.append("three");
+      PathAddress second = parent.append("four/five");
+
+      assertEquals(PathAddress.pathAddress("one", "two", "three"), first);
+      assertEquals(PathAddress.pathAddress("one", "two", "four", "five"), second);
+      assertEquals(PathAddress.pathAddress("one", "two", "three").hashCode(), first.hashCode());
+      assertEquals("/one/two/three", first.toString());
+      assertEquals("/one/two/four/five", second.toString());
+      assertEquals("five", second.getLastElement());
+      assertEquals("four", second.get(2));
+      assertEquals(PathAddress.pathAddress("two", "four"), second.subAddress(1, 3));
+      assertEquals(PathAddress.pathAddress("one", "two"), parent);
+
+      assertEquals("/three", PathAddress.empty().append("three").toString());
+      assertEquals(first, first.append(PathAddress.empty()));
+      assertFalse(first == first.append(PathAddress.empty()));
+   }
+
+   @Test
+   public void testPathAddressParse()
+   {
+      PathAddress address = PathAddress.pathAddress("one", "two", "three");
+      assertEquals(address, PathAddress.pathAddress("//one//two///three//"));
+      assertEquals(address, PathAddress.pathAddress(" one /two / three"));
+      assertEquals(PathAddress.empty(), PathAddress.pathAddress("/"));
+      assertEquals(PathAddress.empty(), PathAddress.pathAddress("///"));
+      assertEquals(1, PathAddress.pathAddress("a.b-c").size());
+
+      assertSame(address.toString(), address.toString());
+      assertEquals(address.hashCode(), PathAddress.pathAddress("/one/two/three").hashCode());
+   }
 }
@@ -26,8 +26,10 @@ import junit.framework.Assert;
 import org.junit.Test;
 
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -291,6 +293,56 @@ public class PathTemplateFilterTest
       Assert.assertTrue(address.accepts(filter));
    }
 
+   @Test
+   public void testFilterManyValues()
+   {
+      String[] sites = new String[500];
+      for (int i = 0; i < sites.length; i++)
+      {
+         sites[i] = "site-" + i;
+      }
+      PathTemplateFilter filter = PathTemplateFilter.create("page-name").exclude("hidden").and("site-name").include(sites).build();
+
+      PathAddress address = PathAddress.pathAddress("some", "path");
+      address.addPathTemplateBindings(Collections.singletonMap("site-name", "site-250"));
+      Assert.assertTrue(address.accepts(filter));
+
+      address = PathAddress.pathAddress("some", "path");
+      address.addPathTemplateBindings(Collections.singletonMap("site-name", "site-500"));
+      Assert.assertFalse(address.accepts(filter));
+
+      address = PathAddress.pathAddress("some", "path");
+      address.addPathTemplateBindings(Collections.singletonMap("site-name", "site-499"));
+      address.addPathTemplateBindings(Collections.singletonMap("page-name", "hidden"));
+      Assert.assertFalse(address.accepts(filter));
+   }
+
+   @Test
+   public void testRejectsAll()
+   {
+      PathTemplateFilter filter = PathTemplateFilter.create("site-name").include("classic").build();
+
+      PathAddress address = PathAddress.pathAddress("mop", "portalsites");
+      Assert.assertFalse(filter.rejectsAll(address));
+
+      address = PathAddress.pathAddress("mop", "portalsites", "intranet");
+      address.addPathTemplateBindings(Collections.singletonMap("site-name", "intranet"));
+      Assert.assertTrue(filter.rejectsAll(address));
+
+      address = PathAddress.pathAddress("mop", "portalsites", "classic");
+      address.addPathTemplateBindings(Collections.singletonMap("site-name", "classic"));
+      Assert.assertFalse(filter.rejectsAll(address));
+
+      // page-name may still resolve to 'home' below the site, which is then accepted
+      filter = PathTemplateFilter.create("site-name").include("classic").and("page-name").include("home").build();
+      address = PathAddress.pathAddress("mop", "portalsites", "intranet");
+      address.addPathTemplateBindings(Collections.singletonMap("site-name", "intranet"));
+      Assert.assertFalse(filter.rejectsAll(address));
+
+      filter = PathTemplateFilter.create("site-name").exclude("intranet").build();
+      Assert.assertTrue(filter.rejectsAll(address));
+   }
+
    @Test
    public void testParser() throws ParseException
    {
@@ -338,6 +390,19 @@ public class PathTemplateFilterTest
       Assert.assertEquals(expected, actual);
    }
 
+   @Test
+   public void testParsedFilterCached() throws ParseException
+   {
+      List<String> attributes = new ArrayList<String>(Arrays.asList("foo:bar", "bar:!foo"));
+      PathTemplateFilter filter = PathTemplateFilter.parse(attributes);
+      Assert.assertSame(filter, PathTemplateFilter.parse(Arrays.asList("foo:bar", "bar:!foo")));
+
+      // Changing the attributes after parsing must not affect the cached filter
+      attributes.set(0, "foo:foobar");
+      Assert.assertSame(filter, PathTemplateFilter.parse(Arrays.asList("foo:bar", "bar:!foo")));
+      Assert.assertFalse(filter.equals(PathTemplateFilter.parse(attributes)));
+   }
+
    @Test
    public void testAllowNullsOnParse() throws ParseException
    {
@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.api.controller;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @version $Revision$
+ */
+public class SpoolingOutputStreamTest
+{
+   @Test
+   public void testInMemory() throws Exception
+   {
+      byte[] data = data(100000);
+      SpoolingOutputStream sos = new SpoolingOutputStream();
+      write(sos, data);
+
+      assertFalse(sos.isSpooledToFile());
+      assertEquals(data.length, sos.size());
+      assertTrue(Arrays.equals(data, read(sos.getInputStream())));
+   }
+
+   @Test
+   public void testSpooledToFile() throws Exception
+   {
+      byte[] data = data(100000);
+      SpoolingOutputStream sos = new SpoolingOutputStream(40000);
+      write(sos, data);
+
+      assertTrue(sos.isSpooledToFile());
+      assertEquals(data.length, sos.size());
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      sos.writeTo(out);
+      assertTrue(Arrays.equals(data, out.toByteArray()));
+      assertFalse(sos.isSpooledToFile());
+   }
+
+   @Test
+   public void testReplayOnce() throws Exception
+   {
+      SpoolingOutputStream sos = new SpoolingOutputStream();
+      sos.write(1);
+      sos.getInputStream().close();
+
+      try
+      {
+         sos.getInputStream();
+         fail();
+      }
+      catch (IllegalStateException e)
+      {
+      }
+
+      try
+      {
+         sos.write(2);
+         fail();
+      }
+      catch (IOException e)
+      {
+      }
+   }
+
+   private static void write(SpoolingOutputStream sos, byte[] data) throws IOException
+   {
+      // Mix single bytes and arrays of different sizes
+      int i = 0;
+      while (i < data.length)
+      {
+         if (i % 7 == 0)
+         {
+            sos.write(data[i++]);
+         }
+         else
+         {
+            int len = Math.min(data.length - i, i % 5000);
+            sos.write(data, i, len);
+            i += len;
+         }
+      }
+      sos.close();
+   }
+
+   private static byte[] read(InputStream in) throws IOException
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      int b;
+      while ((b = in.read()) != -1)
+      {
+         out.write(b);
+      }
+      in.close();
+      return out.toByteArray();
+   }
+
+   private static byte[] data(int size)
+   {
+      byte[] data = new byte[size];
+      new Random(size).nextBytes(data);
+      return data;
+   }
+}
@@ -0,0 +1,72 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.cli.crash.arguments;
+
+import org.crsh.cmdline.ParameterDescriptor;
+import org.crsh.cmdline.annotations.Man;
+import org.crsh.cmdline.annotations.Option;
+import org.crsh.cmdline.annotations.Usage;
+import org.crsh.cmdline.spi.Completer;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @version $Revision$
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Option(names = {"z", "compression"}, completer = CompressionOption.CompressionCompleter.class)
+@Usage("The compression of the archive for an export operation")
+@Man("The compression of the archive for an export operation. Valid values are: 0 (no compression) to 9 (best compression), and stored.")
+public @interface CompressionOption
+{
+   public static class CompressionCompleter implements Completer
+   {
+      public static final Set<String> modes = new HashSet<String>(Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "stored"));
+
+      @Override
+      public Map<String, Boolean> complete(ParameterDescriptor<?> parameter, String prefix) throws Exception
+      {
+         Map<String, Boolean> completions = new HashMap<String, Boolean>(modes.size());
+         for (String mode : modes)
+         {
+            if ("".equals(prefix))
+            {
+               completions.put(mode, true);
+            }
+            else if (mode.startsWith(prefix))
+            {
+               completions.put(mode.substring(prefix.length()), true);
+            }
+         }
+
+         return completions;
+      }
+   }
+}
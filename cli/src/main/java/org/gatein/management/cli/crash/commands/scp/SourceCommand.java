@@ -23,16 +23,14 @@
 package org.gatein.management.cli.crash.commands.scp;
 
 import org.crsh.ssh.term.scp.SCPAction;
-import org.crsh.util.IO;
 import org.gatein.management.api.ContentType;
 import org.gatein.management.api.PathAddress;
 import org.gatein.management.api.controller.ManagedRequest;
 import org.gatein.management.api.controller.ManagedResponse;
 import org.gatein.management.api.controller.ManagementController;
+import org.gatein.management.api.controller.SpoolingOutputStream;
 import org.gatein.management.api.operation.OperationNames;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -52,22 +50,28 @@ public class SourceCommand extends SCPCommand
    {
       ManagedResponse response = getResponse(controller, path, attributes);
 
-      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-      response.writeResult(outputStream);
-      outputStream.flush();
-      outputStream.close();
+      SpoolingOutputStream outputStream = new SpoolingOutputStream();
+      try
+      {
+         response.writeResult(outputStream);
+         outputStream.close();
 
-      out.write("C0644 ".getBytes());
-      out.write(Integer.toString(outputStream.size()).getBytes());
-      out.write(" ".getBytes());
-      out.write(getFileName().getBytes());
-      out.write("\n".getBytes());
-      out.flush();
+         out.write("C0644 ".getBytes());
+         out.write(Long.toString(outputStream.size()).getBytes());
+         out.write(" ".getBytes());
+         out.write(getFileName().getBytes());
+         out.write("\n".getBytes());
+         out.flush();
 
-      readAck();
-      IO.copy(new ByteArrayInputStream(outputStream.toByteArray()), out);
-      ack();
-      readAck();
+         readAck();
+         outputStream.writeTo(out);
+         ack();
+         readAck();
+      }
+      finally
+      {
+         outputStream.release();
+      }
    }
 
    private ManagedResponse getResponse(ManagementController controller, String path, Map<String, List<String>> attributes)
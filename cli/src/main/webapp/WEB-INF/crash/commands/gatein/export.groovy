@@ -29,8 +29,11 @@ import org.crsh.command.ScriptException
 import org.gatein.management.api.ContentType
 import org.gatein.management.api.controller.ManagedResponse
 import org.gatein.management.api.operation.OperationNames
+import org.gatein.management.api.operation.model.ExportResourceModel
 import org.gatein.management.cli.crash.commands.ManagementCommand
 import org.gatein.management.cli.crash.arguments.FilterOption
+import org.gatein.management.cli.crash.arguments.CompressionOption
+import org.gatein.management.cli.crash.arguments.CompressionOption.CompressionCompleter
 import org.crsh.cmdline.annotations.Option
 import org.crsh.cmdline.annotations.Required
 import org.gatein.management.cli.crash.arguments.FileOption
@@ -45,12 +48,17 @@ The export command invokes the 'export-resource' operation on the given resource
 to a file or directory.  The path of the file or directory must be absolute, and the directory must exist.
 """)
   @Command
-  public Object main(@Required @FileOption String file, @FilterOption List<String> filters, @Argument String path) throws ScriptException
+  public Object main(@Required @FileOption String file, @FilterOption List<String> filters, @CompressionOption String compression, @Argument String path) throws ScriptException
   {
     assertConnected()
 
     if (file.charAt(0) != '/') return "File or directory must be absolute.";
 
+    if (compression != null && ! CompressionCompleter.modes.contains(compression))
+    {
+      return "Invalid compression. Valid values are: 0 to 9, and stored";
+    }
+
     def before = address;
     def pathAddress = getAddress(address, path);
 
@@ -70,7 +78,10 @@ to a file or directory.  The path of the file or directory must be absolute, and
       if (actualFile.exists()) return "File $actualFile already exists.";
     }
 
-    execute(OperationNames.EXPORT_RESOURCE, pathAddress, ContentType.ZIP, ["filter":filters], null, { result ->
+    def attributes = ["filter":filters]
+    if (compression != null) attributes["compression"] = [compression];
+
+    execute(OperationNames.EXPORT_RESOURCE, pathAddress, ContentType.ZIP, attributes, null, { result ->
       address = before;
       def resp = response as ManagedResponse;
       def fos = new FileOutputStream(actualFile)
@@ -78,6 +89,11 @@ to a file or directory.  The path of the file or directory must be absolute, and
       {
         resp.writeResult(fos);
         fos.flush();
+
+        // Known once the archive was written, as resources are pruned while they are traversed
+        def pruned = (resp.result instanceof ExportResourceModel) ? resp.result.prunedResourceCount : 0;
+        if (pruned > 0) return "Export complete ! File location: $actualFile ($pruned resource(s) pruned by the filter)";
+
         return "Export complete ! File location: $actualFile";
       }
       finally
@@ -25,11 +25,14 @@ import javax.script.ScriptException
 import org.crsh.cmdline.annotations.Argument
 import org.crsh.cmdline.annotations.Command
 import org.crsh.cmdline.annotations.Man
+import org.crsh.cmdline.annotations.Option
 import org.crsh.cmdline.annotations.Required
 import org.crsh.cmdline.annotations.Usage
 import org.gatein.management.api.ContentType
 import org.gatein.management.api.controller.ManagedResponse
 import org.gatein.management.api.operation.OperationNames
+import org.gatein.management.api.operation.model.ImportResourceModel
+import org.gatein.management.api.operation.model.ImportResultModel
 import org.gatein.management.cli.crash.arguments.FileOption
 import org.gatein.management.cli.crash.arguments.ImportModeOption
 import org.gatein.management.cli.crash.arguments.ImportModeOption.ImportModeCompleter
@@ -44,7 +47,9 @@ class importfile extends ManagementCommand
 The import command invokes the 'import-resource' operation on the given resource.
 """)
   @Command
-  public Object main(@Required @FileOption String file, @ImportModeOption String importMode, @Argument String path) throws ScriptException
+  public Object main(@Required @FileOption String file, @ImportModeOption String importMode,
+                     @Usage("only imports entries which changed from the current state") @Option(names = ["d", "delta"]) Boolean delta,
+                     @Argument String path) throws ScriptException
   {
     assertConnected()
     def actualFile = new File(file);
@@ -60,14 +65,17 @@ The import command invokes the 'import-resource' operation on the given resource
 
     def attributes = [:]
     if (importMode != null) attributes["importMode"] = [importMode];
+    if (delta) attributes[ImportResourceModel.DELTA_ATTRIBUTE] = ["true"];
 
     execute(OperationNames.IMPORT_RESOURCE, pathAddress, ContentType.ZIP, attributes, new FileInputStream(actualFile), { result ->
       address = before;
       def resp = response as ManagedResponse;
 
       String failure = resp.outcome.failureDescription;
+      if (failure != null) return failure;
 
-      return (failure != null) ? failure : "Successfully imported file $actualFile";
+      def result = resp.result;
+      return (result instanceof ImportResultModel) ? "Successfully imported file $actualFile: $result" : "Successfully imported file $actualFile";
     });
   }
 }
\ No newline at end of file
@@ -32,6 +32,7 @@ import org.gatein.management.api.ContentType
 import org.gatein.management.api.PathAddress
 import org.gatein.management.api.controller.ManagedResponse
 import org.gatein.management.api.controller.ManagementController
+import org.gatein.management.api.controller.SpoolingOutputStream
 import org.gatein.management.api.operation.OperationNames
 import org.gatein.management.api.operation.model.ReadResourceModel
 import org.gatein.management.cli.crash.arguments.AttributeOption
@@ -129,7 +130,7 @@ Executes the read-resource operation of the current address (path) passing in at
 
 """)
   @Command
-  public Object exec(@ContentTypeOption String contentType, @Input String input, @Output String output, @AttributeOption List<String> attributes, @Required @OperationOption String operation, @Argument String path)
+  public Object exec(@ContentTypeOption String contentType, @Input String input, @Output String output, @AttributeOption List<String> attributes, @Required @OperationOption String operation, @Argument String path, InvocationContext<Void, Void> ctx)
   {
     assertConnected()
     def ct = (contentType == null) ? ContentType.JSON : ContentType.forName(contentType);
@@ -166,11 +167,34 @@ Executes the read-resource operation of the current address (path) passing in at
 
       if (outputFile == null)
       {
-        def baos = new ByteArrayOutputStream();
-        resp.writeResult(baos);
+        def spool = new SpoolingOutputStream();
+        try
+        {
+          resp.writeResult(spool);
+          if (spool.size() == 0) return "Operation '$operation' at address '$addr' was successful.";
 
-        String data = new String(baos.toByteArray());
-        return (data.length() == 0) ? "Operation '$operation' at address '$addr' was successful." : data;
+          // Print the result as it's read back, rather than building a string of it
+          def reader = new InputStreamReader(spool.inputStream);
+          try
+          {
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1)
+            {
+              ctx.writer.write(buffer, 0, read);
+            }
+            ctx.writer.println();
+          }
+          finally
+          {
+            reader.close();
+          }
+          return null;
+        }
+        finally
+        {
+          spool.release();
+        }
       }
       else
       {
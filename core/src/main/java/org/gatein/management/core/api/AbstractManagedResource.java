@@ -25,10 +25,10 @@ package org.gatein.management.core.api;
 import org.gatein.management.api.ManagedDescription;
 import org.gatein.management.api.ManagedResource;
 import org.gatein.management.api.PathAddress;
-import org.gatein.management.api.PathAddressIterator;
+import org.gatein.management.api.ResolvableManagedResource;
 import org.gatein.management.api.operation.OperationHandler;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 
@@ -36,7 +36,7 @@ import java.util.Set;
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  * @version $Revision$
  */
-public abstract class AbstractManagedResource implements ManagedResource, ManagedResource.Registration
+public abstract class AbstractManagedResource implements ResolvableManagedResource, ManagedResource.Registration
 {
    protected final PathElement pathElement;
    protected final AbstractManagedResource parent;
@@ -50,13 +50,15 @@ public abstract class AbstractManagedResource implements ManagedResource, Manage
    @Override
    public final ManagedDescription getResourceDescription(PathAddress address)
    {
-      return getResourceDescription(address.iterator());
+      AbstractManagedResource resource = locate(address);
+
+      return (resource == null) ? null : resource.getDescription();
    }
 
    @Override
    public final OperationHandler getOperationHandler(PathAddress address, String operationName)
    {
-      OperationEntry entry = getOperationEntry(address.iterator(), operationName);
+      OperationEntry entry = getOperationEntry(address, operationName);
 
       return (entry == null) ? null : entry.getOperationHandler();
    }
@@ -64,7 +66,7 @@ public abstract class AbstractManagedResource implements ManagedResource, Manage
    @Override
    public final ManagedDescription getOperationDescription(PathAddress address, String operationName)
    {
-      OperationEntry entry = getOperationEntry(address.iterator(), operationName);
+      OperationEntry entry = getOperationEntry(address, operationName);
 
       return (entry == null) ? null : entry.getDescription();
    }
@@ -72,39 +74,99 @@ public abstract class AbstractManagedResource implements ManagedResource, Manage
    @Override
    public Map<String, ManagedDescription> getOperationDescriptions(PathAddress address)
    {
-      Map<String, OperationEntry> entries = new HashMap<String, OperationEntry>();
-      getOperationEntries(address.iterator(), entries);
+      AbstractManagedResource resource = locate(address);
+      if (resource == null) return Collections.emptyMap();
 
-      Map<String, ManagedDescription> map = new HashMap<String, ManagedDescription>(entries.size());
-      for (Map.Entry<String, OperationEntry> entry : entries.entrySet())
-      {
-         map.put(entry.getKey(), entry.getValue().description);
-      }
-
-      return map;
+      return resource.getOperationDescriptions();
    }
 
    @Override
    public final ManagedResource getSubResource(PathAddress address)
    {
-      return getSubResource(address.iterator());
+      return locate(address);
    }
 
    @Override
    public final Set<String> getSubResourceNames(PathAddress address)
    {
-      return getChildNames(address.iterator());
+      AbstractManagedResource resource = locate(address);
+
+      return (resource == null) ? Collections.<String>emptySet() : resource.getChildNames();
+   }
+
+   @Override
+   public final Resolution resolve(PathAddress address, String operationName)
+   {
+      AbstractManagedResource resource = locate(address);
+      if (resource == null) return null;
+
+      OperationEntry entry = (operationName == null) ? null : resource.getOperationEntry(operationName);
+
+      return new ResolutionImpl(address, resource, entry);
+   }
+
+   /**
+    * Resolves the managed resource and operation for a given address relative to a resource. Resources which are not
+    * {@link ResolvableManagedResource}s are resolved by their individual lookups.
+    *
+    * @param resource the resource the address is relative to
+    * @param address address of the managed resource
+    * @param operationName name of the operation
+    * @return the resolution or null if no managed resource was found for the address.
+    */
+   public static Resolution resolve(ManagedResource resource, PathAddress address, String operationName)
+   {
+      if (resource instanceof ResolvableManagedResource)
+      {
+         return ((ResolvableManagedResource) resource).resolve(address, operationName);
+      }
+
+      ManagedResource located = resource.getSubResource(address);
+
+      return (located == null) ? null : new LookupResolution(address, resource, located, operationName);
+   }
+
+   private OperationEntry getOperationEntry(PathAddress address, String operationName)
+   {
+      if (operationName == null) return null;
+
+      AbstractManagedResource resource = locate(address);
+
+      return (resource == null) ? null : resource.getOperationEntry(operationName);
    }
 
-   protected abstract ManagedDescription getResourceDescription(PathAddressIterator iterator);
+   /**
+    * Locates the resource registered for the address, relative to this resource. Any path template variables resolved
+    * along the way are made available to the address via {@link PathAddress#resolvePathTemplate(String)}.
+    *
+    * @param address the address of the resource
+    * @return the resource or null if no resource is registered for the address.
+    */
+   protected abstract AbstractManagedResource locate(PathAddress address);
+
+   protected abstract ManagedDescription getDescription();
 
-   protected abstract OperationEntry getOperationEntry(PathAddressIterator iterator, String operationName);
+   protected final OperationEntry getOperationEntry(String operationName)
+   {
+      return getOperationEntries().get(operationName);
+   }
+
+   /**
+    * @return immutable map of all operations available to this resource, registered or inherited.
+    */
+   protected abstract Map<String, OperationEntry> getOperationEntries();
 
-   protected abstract void getOperationEntries(PathAddressIterator iterator, Map<String, OperationEntry> entries);
+   /**
+    * @return immutable map of all operations this resource passes down to its sub-resources.
+    */
+   protected abstract Map<String, OperationEntry> getInheritableOperationEntries();
 
-   protected abstract AbstractManagedResource getSubResource(PathAddressIterator iterator);
+   /**
+    * @return immutable map of the descriptions of all operations available to this resource, registered or inherited.
+    */
+   protected abstract Map<String, ManagedDescription> getOperationDescriptions();
 
-   protected abstract Set<String> getChildNames(PathAddressIterator iterator);
+   protected abstract Set<String> getChildNames();
 
    protected String getPath()
    {
@@ -118,6 +180,110 @@ public abstract class AbstractManagedResource implements ManagedResource, Manage
       }
    }
 
+   private static final class ResolutionImpl implements Resolution
+   {
+      private final PathAddress address;
+      private final AbstractManagedResource resource;
+      private final OperationEntry entry;
+
+      private ResolutionImpl(PathAddress address, AbstractManagedResource resource, OperationEntry entry)
+      {
+         this.address = address;
+         this.resource = resource;
+         this.entry = entry;
+      }
+
+      @Override
+      public PathAddress getAddress()
+      {
+         return address;
+      }
+
+      @Override
+      public ManagedResource getResource()
+      {
+         return resource;
+      }
+
+      @Override
+      public OperationHandler getOperationHandler()
+      {
+         return (entry == null) ? null : entry.getOperationHandler();
+      }
+
+      @Override
+      public ManagedDescription getOperationDescription()
+      {
+         return (entry == null) ? null : entry.getDescription();
+      }
+
+      @Override
+      public OperationHandler getOperationHandler(String operationName)
+      {
+         OperationEntry operationEntry = (operationName == null) ? null : resource.getOperationEntry(operationName);
+
+         return (operationEntry == null) ? null : operationEntry.getOperationHandler();
+      }
+
+      @Override
+      public Map<String, ManagedDescription> getOperationDescriptions()
+      {
+         return resource.getOperationDescriptions();
+      }
+   }
+
+   private static final class LookupResolution implements Resolution
+   {
+      private final PathAddress address;
+      private final ManagedResource root;
+      private final ManagedResource resource;
+      private final String operationName;
+
+      private LookupResolution(PathAddress address, ManagedResource root, ManagedResource resource, String operationName)
+      {
+         this.address = address;
+         this.root = root;
+         this.resource = resource;
+         this.operationName = operationName;
+      }
+
+      @Override
+      public PathAddress getAddress()
+      {
+         return address;
+      }
+
+      @Override
+      public ManagedResource getResource()
+      {
+         return resource;
+      }
+
+      @Override
+      public OperationHandler getOperationHandler()
+      {
+         return getOperationHandler(operationName);
+      }
+
+      @Override
+      public ManagedDescription getOperationDescription()
+      {
+         return (operationName == null) ? null : root.getOperationDescription(address, operationName);
+      }
+
+      @Override
+      public OperationHandler getOperationHandler(String operationName)
+      {
+         return (operationName == null) ? null : root.getOperationHandler(address, operationName);
+      }
+
+      @Override
+      public Map<String, ManagedDescription> getOperationDescriptions()
+      {
+         return root.getOperationDescriptions(address);
+      }
+   }
+
    protected static final class OperationEntry
    {
       private final OperationHandler operationHandler;
@@ -32,8 +32,13 @@ import org.gatein.management.api.PathAddress;
 import org.gatein.management.api.binding.BindingException;
 import org.gatein.management.api.binding.BindingProvider;
 import org.gatein.management.api.binding.Marshaller;
+import org.gatein.management.api.operation.OperationHandler;
 import org.gatein.management.api.operation.OperationNames;
 import org.gatein.management.core.api.binding.GlobalBindingProvider;
+import org.gatein.management.core.api.binding.zip.ExportManifestCache;
+import org.gatein.management.core.api.binding.zip.ExportResourceModelMarshaller;
+import org.gatein.management.core.api.binding.zip.ImportResourceModelMarshaller;
+import org.gatein.management.core.api.operation.global.ExportJobs;
 import org.gatein.management.core.api.operation.global.ExportResource;
 import org.gatein.management.core.api.operation.global.GlobalOperationHandlers;
 import org.gatein.management.core.spi.ExtensionContextImpl;
@@ -45,6 +50,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -54,10 +66,51 @@ public class ManagementServiceImpl implements ManagementService
 {
    private static final Logger log = LoggerFactory.getLogger(ManagementService.class);
 
+   /**
+    * Number of threads running export tasks, and the entries of import archives, concurrently. They run one after
+    * another on the request thread unless this is greater than 1, as extensions may rely on state bound to the
+    * request thread.
+    */
+   public static final String EXPORT_THREADS_PROPERTY = "gatein.management.export.threads";
+
+   /**
+    * Whether export operations traverse sibling resources concurrently. Each export traverses up to as many branches
+    * at once as there are export threads, on threads of its own rather than the export threads, so one large export
+    * doesn't hold up the other exports and imports.
+    */
+   public static final String EXPORT_PARALLEL_TRAVERSAL_PROPERTY = "gatein.management.export.parallel-traversal";
+
+   /**
+    * Whether exports submitted with the 'async' attribute run as export jobs, in the background. Disabled by default,
+    * as the export handlers of extensions then run on a job thread after the request returned, and extensions may rely
+    * on state bound to the request thread. When disabled, the 'async' attribute is ignored.
+    */
+   public static final String EXPORT_JOBS_PROPERTY = "gatein.management.export.jobs";
+
+   /**
+    * Number of threads running export jobs, which are exports submitted with the 'async' attribute.
+    */
+   public static final String EXPORT_JOB_THREADS_PROPERTY = "gatein.management.export.job-threads";
+
+   /**
+    * Minutes a finished export job, and its archive, is kept.
+    */
+   public static final String EXPORT_JOB_RETENTION_PROPERTY = "gatein.management.export.job-retention";
+
+   // Limit on the size of finished export entries buffered in memory, waiting to be written to the archive
+   private static final long EXPORT_BUFFER_LIMIT = 32 * 1024 * 1024;
+
+   // Limit on the number of export jobs waiting for a thread, beyond which jobs are rejected
+   private static final int EXPORT_JOB_QUEUE_LIMIT = 16;
+
    private ManagedResource rootResource;
    private List<ManagementExtension> extensions;
    private Map<String, BindingProvider> bindingProviders;
    private BindingProvider globalBindingProvider;
+   private ExecutorService exportExecutor;
+   private ExecutorService traversalExecutor;
+   private ExportManifestCache manifestCache;
+   private ExportJobs exportJobs;
 
    @Override
    public ManagedResource getManagedResource(PathAddress address)
@@ -110,8 +163,30 @@ public class ManagementServiceImpl implements ManagementService
          }
       });
 
+      int exportThreads = Integer.getInteger(EXPORT_THREADS_PROPERTY, 1);
+      if (exportThreads > 1)
+      {
+         exportExecutor = Executors.newFixedThreadPool(exportThreads, new ExportThreadFactory("gatein-management-export-"));
+      }
+
+      if (Boolean.getBoolean(EXPORT_JOBS_PROPERTY))
+      {
+         int jobThreads = Integer.getInteger(EXPORT_JOB_THREADS_PROPERTY, 1);
+         long jobRetention = TimeUnit.MINUTES.toMillis(Integer.getInteger(EXPORT_JOB_RETENTION_PROPERTY, 60));
+         exportJobs = new ExportJobs(new ThreadPoolExecutor(jobThreads, jobThreads, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(EXPORT_JOB_QUEUE_LIMIT), new ExportThreadFactory("gatein-management-export-job-")), jobRetention);
+      }
+
+      manifestCache = new ExportManifestCache();
+      if (exportExecutor != null && Boolean.getBoolean(EXPORT_PARALLEL_TRAVERSAL_PROPERTY))
+      {
+         traversalExecutor = Executors.newCachedThreadPool(new ExportThreadFactory("gatein-management-export-traversal-"));
+      }
+      OperationHandler exportHandler = new ExportResource(traversalExecutor, exportThreads, manifestCache);
+      if (exportJobs != null) exportHandler = exportJobs.asyncExportHandler(exportHandler);
+
       Map<String, BindingProvider> map = new HashMap<String, BindingProvider>();
-      ExtensionContext context = new ExtensionContextImpl(resource, map);
+      ExtensionContext context = new ExtensionContextImpl(resource, map, exportHandler);
 
       ServiceLoader<ManagementExtension> loader = ServiceLoader.load(ManagementExtension.class);
       for (ManagementExtension extension : loader)
@@ -126,7 +201,16 @@ public class ManagementServiceImpl implements ManagementService
 
       rootResource = resource;
       bindingProviders = map;
-      globalBindingProvider = new GlobalBindingProvider();
+
+      if (exportExecutor != null)
+      {
+         globalBindingProvider = new GlobalBindingProvider(new ExportResourceModelMarshaller(false, exportExecutor, 2 * exportThreads, EXPORT_BUFFER_LIMIT, manifestCache),
+            new ImportResourceModelMarshaller(exportExecutor, exportThreads));
+      }
+      else
+      {
+         globalBindingProvider = new GlobalBindingProvider(new ExportResourceModelMarshaller(false, null, 0, 0, manifestCache));
+      }
    }
 
    @Override
@@ -141,11 +225,50 @@ public class ManagementServiceImpl implements ManagementService
          extensions.clear();
       }
 
+      if (exportExecutor != null)
+      {
+         exportExecutor.shutdownNow();
+         exportExecutor = null;
+      }
+
+      if (traversalExecutor != null)
+      {
+         traversalExecutor.shutdownNow();
+         traversalExecutor = null;
+      }
+
+      if (exportJobs != null)
+      {
+         exportJobs.shutdown();
+         exportJobs = null;
+      }
+
+      manifestCache = null;
       rootResource = null;
    }
 
    private void initGlobalOperations(ManagedResource.Registration registration)
    {
       registration.registerOperationHandler(OperationNames.READ_RESOURCE, GlobalOperationHandlers.READ_RESOURCE, GlobalOperationHandlers.READ_RESOURCE, true);
+      if (exportJobs != null) exportJobs.registerResources(registration);
+   }
+
+   private static class ExportThreadFactory implements ThreadFactory
+   {
+      private final String namePrefix;
+      private final AtomicInteger count = new AtomicInteger();
+
+      private ExportThreadFactory(String namePrefix)
+      {
+         this.namePrefix = namePrefix;
+      }
+
+      @Override
+      public Thread newThread(Runnable runnable)
+      {
+         Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+         thread.setDaemon(true);
+         return thread;
+      }
    }
 }
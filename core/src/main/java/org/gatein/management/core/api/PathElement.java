@@ -27,6 +27,7 @@ import org.gatein.management.api.PathTemplateResolver;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -45,6 +46,8 @@ public class PathElement
 
    private static final String TEMPLATE_PARAM_DEFAULT_REGEX = "[^/]+";
 
+   private static final String REGEX_META_CHARACTERS = "\\^$.|?*+()[]{}";
+
    public static PathElement pathElement(String path) throws PatternSyntaxException
    {
       // logic based off resteasy for path templating
@@ -57,6 +60,7 @@ public class PathElement
       if (i < split.length) buffer.append(split[i++]);
 
       int groupNumber = 1;
+      boolean fixedSegments = true;
       List<Group> groups = new ArrayList<Group>();
       while (withPathParam.find())
       {
@@ -71,6 +75,7 @@ public class PathElement
          {
             String expr = withPathParam.group(3);
             expr = recoverEnclosedCurlyBraces(expr);
+            fixedSegments = false;
             buffer.append(expr);
             groups.add(new Group(name, groupNumber++));
             groupNumber += groupCount(expr);
@@ -79,20 +84,48 @@ public class PathElement
          if (i < split.length) buffer.append(split[i++]);
       }
 
-      return new PathElement(path, groups, buffer.toString());
+      return new PathElement(path, groups, buffer.toString(), (fixedSegments) ? segmentCount(path) : -1);
    }
 
    private final String value;
    private final List<Group> groups;
    private final String regex;
    private final Pattern pattern;
+   private final int segmentCount;
+
+   // Compiled form used to match without regular expressions when possible
+   private final Kind kind;
+   private final String prefix;
+   private final String suffix;
 
-   public PathElement(String value, List<Group> groups, String regex)
+   public PathElement(String value, List<Group> groups, String regex, int segmentCount)
    {
       this.value = value;
       this.groups = groups;
       this.regex = regex;
-      this.pattern = Pattern.compile(regex);
+      this.segmentCount = segmentCount;
+
+      Kind kind = Kind.REGEX;
+      String prefix = null;
+      String suffix = null;
+      if (groups.isEmpty() && isLiteral(value))
+      {
+         kind = Kind.LITERAL;
+      }
+      else if (groups.size() == 1 && segmentCount != -1)
+      {
+         prefix = value.substring(0, value.indexOf('{'));
+         suffix = value.substring(value.lastIndexOf('}') + 1);
+         if (isLiteral(prefix) && isLiteral(suffix))
+         {
+            kind = Kind.VARIABLE;
+         }
+      }
+
+      this.kind = kind;
+      this.prefix = prefix;
+      this.suffix = suffix;
+      this.pattern = (kind == Kind.REGEX) ? Pattern.compile(regex) : null;
    }
 
    public String getValue()
@@ -105,26 +138,72 @@ public class PathElement
       return !value.equals(regex);
    }
 
+   /**
+    * @return the number of path segments this element always spans, or -1 if a custom template expression allows the
+    * number of segments to vary.
+    */
+   public int getSegmentCount()
+   {
+      return segmentCount;
+   }
+
    public boolean matches(String path)
    {
       int start = 0;
-      if (path.charAt(0) == '/') start++;
+      if (path.length() > 0 && path.charAt(0) == '/') start++;
 
-      Matcher matcher = pattern.matcher(path);
-      matcher.region(start, path.length());
-      return matcher.matches();
+      return matches(path, start, path.length());
+   }
+
+   /**
+    * Whether or not the characters of the path between {@code start} (inclusive) and {@code end} (exclusive) match
+    * this path element. Literals and templates with a single default variable are matched without a regular expression.
+    *
+    * @param path the path
+    * @param start the start index
+    * @param end the end index
+    * @return true if the region of the path matches.
+    */
+   public boolean matches(CharSequence path, int start, int end)
+   {
+      switch (kind)
+      {
+         case LITERAL:
+            return end - start == value.length() && regionMatches(path, start, value);
+         case VARIABLE:
+            return variableStart(path, start, end) != -1;
+         default:
+            Matcher matcher = pattern.matcher(path);
+            matcher.region(start, end);
+            return matcher.matches();
+      }
    }
 
    public String resolve(String name, String path)
    {
-      Matcher matcher = pattern.matcher(path);
       int start = 0;
       if (path.charAt(0) == '/') start++;
 
+      if (kind == Kind.LITERAL)
+      {
+         return null;
+      }
+      else if (kind == Kind.VARIABLE)
+      {
+         if (!groups.get(0).name.equals(name)) return null;
+
+         int variableStart = variableStart(path, start, path.length());
+         return (variableStart == -1) ? null : path.substring(variableStart, path.length() - suffix.length());
+      }
+
       for (Group group : groups)
       {
-         if (matcher.find(start) && group.name.equals(name))
+         if (group.name.equals(name))
          {
+            Matcher matcher = pattern.matcher(path);
+            matcher.region(start, path.length());
+            if (!matcher.matches()) return null;
+
             String s = matcher.group(group.group);
             if ("".equals(s)) return null;
 
@@ -135,6 +214,91 @@ public class PathElement
       return null;
    }
 
+   /**
+    * Resolves all template variables of this path element with a single match of the path.
+    *
+    * @param path the path matched by this element
+    * @param bindings map the resolved template variables are put in
+    */
+   public void bind(String path, Map<String, String> bindings)
+   {
+      int start = 0;
+      if (path.length() > 0 && path.charAt(0) == '/') start++;
+
+      if (kind == Kind.VARIABLE)
+      {
+         int variableStart = variableStart(path, start, path.length());
+         if (variableStart != -1)
+         {
+            bindings.put(groups.get(0).name, path.substring(variableStart, path.length() - suffix.length()));
+         }
+      }
+      else if (kind == Kind.REGEX)
+      {
+         Matcher matcher = pattern.matcher(path);
+         matcher.region(start, path.length());
+         if (!matcher.matches()) return;
+
+         for (Group group : groups)
+         {
+            String s = matcher.group(group.group);
+            if (s != null && s.length() > 0)
+            {
+               bindings.put(group.name, s);
+            }
+         }
+      }
+   }
+
+   /**
+    * @return start index of the variable if the region matches prefix, variable and suffix, otherwise -1.
+    */
+   private int variableStart(CharSequence path, int start, int end)
+   {
+      int variableStart = start + prefix.length();
+      int variableEnd = end - suffix.length();
+      if (variableEnd <= variableStart) return -1;
+      if (!regionMatches(path, start, prefix) || !regionMatches(path, variableEnd, suffix)) return -1;
+
+      for (int i = variableStart; i < variableEnd; i++)
+      {
+         if (path.charAt(i) == '/') return -1;
+      }
+
+      return variableStart;
+   }
+
+   private static boolean regionMatches(CharSequence path, int offset, String s)
+   {
+      for (int i = 0; i < s.length(); i++)
+      {
+         if (path.charAt(offset + i) != s.charAt(i)) return false;
+      }
+
+      return true;
+   }
+
+   private static boolean isLiteral(String s)
+   {
+      for (int i = 0; i < s.length(); i++)
+      {
+         if (REGEX_META_CHARACTERS.indexOf(s.charAt(i)) != -1) return false;
+      }
+
+      return true;
+   }
+
+   private static int segmentCount(String path)
+   {
+      int count = 1;
+      for (int i = 0; i < path.length(); i++)
+      {
+         if (path.charAt(i) == '/') count++;
+      }
+
+      return count;
+   }
+
    private static final Pattern GROUP = Pattern.compile("[^\\\\]\\(");
 
    private static int groupCount(String regex)
@@ -184,6 +348,11 @@ public class PathElement
       return str.replace(openCurlyReplacement, '{').replace(closeCurlyReplacement, '}');
    }
 
+   private static enum Kind
+   {
+      LITERAL, VARIABLE, REGEX
+   }
+
    private static final class Group
    {
       private String name;
@@ -27,18 +27,19 @@ import org.gatein.common.logging.LoggerFactory;
 import org.gatein.management.api.ManagedDescription;
 import org.gatein.management.api.ManagedResource;
 import org.gatein.management.api.PathAddress;
-import org.gatein.management.api.PathAddressIterator;
-import org.gatein.management.api.PathTemplateResolver;
 import org.gatein.management.api.exceptions.ManagementException;
 import org.gatein.management.api.operation.OperationHandler;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.PatternSyntaxException;
 
 /**
@@ -52,12 +53,20 @@ public class SimpleManagedResource extends AbstractManagedResource
    private volatile ConcurrentMap<String, SimpleManagedResource> children = new ConcurrentHashMap<String, SimpleManagedResource>();
    private volatile ConcurrentMap<String, OperationEntry> operations = new ConcurrentHashMap<String, OperationEntry>();
 
+   // Effective operations, compiled as operation handlers are registered
+   private volatile OperationTable operationTable;
+
+   // Routing table, compiled as sub-resources are registered
+   private final ConcurrentMap<String, SimpleManagedResource> literalChildren = new ConcurrentHashMap<String, SimpleManagedResource>();
+   private final List<SimpleManagedResource> templateChildren = new CopyOnWriteArrayList<SimpleManagedResource>();
+
    protected final ManagedDescription description;
 
    public SimpleManagedResource(PathElement pathElement, AbstractManagedResource parent, ManagedDescription description)
    {
       super(pathElement, parent);
       this.description = description;
+      compileOperations();
    }
 
    //------------------------------- Registration Methods -------------------------------//
@@ -86,6 +95,15 @@ public class SimpleManagedResource extends AbstractManagedResource
          throw new IllegalArgumentException("Resource " + name + " already exists for path " + getPath());
       }
 
+      if (!element.isTemplate() && element.getSegmentCount() == 1)
+      {
+         literalChildren.put(element.getValue(), resource);
+      }
+      else
+      {
+         templateChildren.add(resource);
+      }
+
       return resource;
    }
 
@@ -102,118 +120,73 @@ public class SimpleManagedResource extends AbstractManagedResource
       {
          throw new IllegalArgumentException("A handler is already registered for operation " + operationName + " at path " + getPath());
       }
+
+      compileOperations();
    }
 
    //------------------------------- Resource Descriptions -------------------------------//
 
    @Override
-   protected ManagedDescription getResourceDescription(PathAddressIterator iterator)
+   protected ManagedDescription getDescription()
    {
-      if (iterator.hasNext())
-      {
-         String name = iterator.next();
-         AbstractManagedResource resource = findDescendant(iterator, name, new StringBuilder());
-
-         return (resource != null) ? resource.getResourceDescription(iterator) : null;
-      }
-      else
-      {
-         return description;
-      }
+      return description;
    }
 
    //------------------------------- Operation information -------------------------------//
 
    @Override
-   protected OperationEntry getOperationEntry(PathAddressIterator iterator, String operationName)
+   protected Map<String, OperationEntry> getOperationEntries()
    {
-      if (operationName == null) return null;
-      
-      OperationEntry entry = operations.get(operationName);
-      if (iterator.hasNext())
-      {
-         String name = iterator.next();
-         AbstractManagedResource resource = findDescendant(iterator, name, new StringBuilder());
-
-         return (resource != null) ? resource.getOperationEntry(iterator, operationName) : null;
-      }
-      else
-      {
-         if (entry == null)
-         {
-            AbstractManagedResource parent = this.parent;
-            while (parent != null)
-            {
-               OperationEntry parentEntry = parent.getOperationEntry(PathAddressIterator.EMPTY, operationName);
-               if (parentEntry != null && parentEntry.isInherited())
-               {
-                  entry = parentEntry;
-                  break;
-               }
-               parent = parent.parent;
-            }
-         }
+      return operationTable.entries;
+   }
 
-         return entry;
-      }
+   @Override
+   protected Map<String, OperationEntry> getInheritableOperationEntries()
+   {
+      return operationTable.inheritable;
    }
 
    @Override
-   protected void getOperationEntries(PathAddressIterator iterator, Map<String, OperationEntry> entries)
+   protected Map<String, ManagedDescription> getOperationDescriptions()
    {
-      if (iterator.hasNext())
-      {
-         String name = iterator.next();
-         AbstractManagedResource resource = findDescendant(iterator, name, new StringBuilder());
+      return operationTable.descriptions;
+   }
 
-         if (resource != null)
-         {
-            resource.getOperationEntries(iterator, entries);
-         }
-      }
-      else
-      {
-         for (Map.Entry<String, OperationEntry> entry : operations.entrySet())
-         {
-            entries.put(entry.getKey(), entry.getValue());
-         }
+   /**
+    * Flattens the operations registered for this resource with the operations inherited from its parents, so operation
+    * lookups never have to walk up the tree. Sub-resources inherit from this table, so they are recompiled as well.
+    */
+   private void compileOperations()
+   {
+      Map<String, OperationEntry> inherited = (parent == null) ? Collections.<String, OperationEntry>emptyMap() : parent.getInheritableOperationEntries();
 
-         AbstractManagedResource parent = this.parent;
-         while (parent != null)
+      Map<String, OperationEntry> entries = new HashMap<String, OperationEntry>(inherited);
+      Map<String, OperationEntry> inheritable = new HashMap<String, OperationEntry>(inherited);
+      for (Map.Entry<String, OperationEntry> entry : operations.entrySet())
+      {
+         entries.put(entry.getKey(), entry.getValue());
+         if (entry.getValue().isInherited())
          {
-            Map<String, OperationEntry> parentMap = new HashMap<String, OperationEntry>();
-            parent.getOperationEntries(PathAddress.empty().iterator(), parentMap);
-            for (Map.Entry<String, OperationEntry> entry : parentMap.entrySet())
-            {
-               if (entry.getValue().isInherited() && !entries.containsKey(entry.getKey()))
-               {
-                  entries.put(entry.getKey(), entry.getValue());
-               }
-            }
-            
-            parent = parent.parent;
+            inheritable.put(entry.getKey(), entry.getValue());
          }
       }
-   }
-   
-   //------------------------------- SubResource information -------------------------------//
 
-   @Override
-   protected AbstractManagedResource getSubResource(PathAddressIterator iterator)
-   {
-      if (iterator.hasNext())
+      Map<String, ManagedDescription> descriptions = new HashMap<String, ManagedDescription>(entries.size());
+      for (Map.Entry<String, OperationEntry> entry : entries.entrySet())
       {
-         String name = iterator.next();
-         AbstractManagedResource resource = findDescendant(iterator, name, new StringBuilder());
-
-         return (resource != null) ? resource.getSubResource(iterator) : null;
+         descriptions.put(entry.getKey(), entry.getValue().getDescription());
       }
-      else
+
+      operationTable = new OperationTable(entries, inheritable, descriptions);
+
+      for (SimpleManagedResource child : children.values())
       {
-         return this;
+         child.compileOperations();
       }
    }
 
+   //------------------------------- SubResource information -------------------------------//
+
    @Override
    public ManagedResource getSubResource(String childName)
    {
@@ -221,96 +194,78 @@ public class SimpleManagedResource extends AbstractManagedResource
    }
 
    @Override
-   protected Set<String> getChildNames(PathAddressIterator iterator)
+   protected Set<String> getChildNames()
    {
-      if (iterator.hasNext())
-      {
-         String name = iterator.next();
-         AbstractManagedResource resource = findDescendant(iterator, name, new StringBuilder());
-
-         return (resource == null) ? Collections.<String>emptySet() : resource.getChildNames(iterator);
-      }
-      else
-      {
-         return Collections.unmodifiableSet(new HashSet<String>(children.keySet()));
-      }
+      return Collections.unmodifiableSet(new HashSet<String>(children.keySet()));
    }
 
-   //------------------------------- Private stuff -------------------------------//
+   //------------------------------- Routing -------------------------------//
 
-   private AbstractManagedResource findDescendant(PathAddressIterator iterator, String childName, StringBuilder path)
+   @Override
+   protected AbstractManagedResource locate(PathAddress address)
    {
-      AbstractManagedResource child = children.get(childName);
-
-      while (child == null)
+      List<TemplateMatch> matches = new ArrayList<TemplateMatch>();
+      AbstractManagedResource resource = route(address, 0, matches);
+      if (resource != null && !matches.isEmpty())
       {
-         path.append("/").append(childName);
-         child = findMatch(iterator, path);
-         if (iterator.hasNext())
-         {
-            child = findDescendant(iterator, iterator.next(), path);
-         }
-         else
+         // Deeper path templates take precedence, so bind from the root down.
+         Map<String, String> bindings = new HashMap<String, String>();
+         for (TemplateMatch match : matches)
          {
-            break;
+            match.pathElement.bind(match.path, bindings);
          }
+         address.addPathTemplateBindings(bindings);
       }
 
-      return child;
+      return resource;
    }
 
-   private AbstractManagedResource findMatch(PathAddressIterator iterator, final StringBuilder path)
+   /**
+    * Walks the routing table compiled at registration time. Literal segments are a single hash lookup, template edges
+    * are tried in registration order, and only templates which can span a variable number of segments need to look
+    * at more than one segment. Backtracks if the remaining address cannot be routed by a matched child.
+    */
+   private SimpleManagedResource route(PathAddress address, int index, List<TemplateMatch> matches)
    {
-      for (final SimpleManagedResource resource : children.values())
+      int size = address.size();
+      if (index == size) return this;
+
+      SimpleManagedResource literal = literalChildren.get(address.get(index));
+      if (literal != null)
       {
-         if (resource.pathElement.matches(path.toString()))
+         SimpleManagedResource found = literal.route(address, index + 1, matches);
+         if (found != null) return found;
+      }
+
+      for (SimpleManagedResource child : templateChildren)
+      {
+         PathElement element = child.pathElement;
+         int span = element.getSegmentCount();
+         if (span == 1)
          {
-            PathAddressIterator pai = new PathAddressIterator(iterator.currentAddress());
-            StringBuilder sb = new StringBuilder(path);
-            while (pai.hasNext())
+            String segment = address.get(index);
+            if (element.matches(segment, 0, segment.length()))
             {
-               String next = pai.next();
-               sb.append("/").append(next);
-               if (resource.pathElement.matches(sb.toString()))
-               {
-                  AbstractManagedResource found = resource.findMatch(pai, new StringBuilder(next));
-                  if (found == null)
-                  {
-                     path.append("/").append(next);
-                     iterator.next();
-                  }
-                  else
-                  {
-                     break;
-                  }
-               }
-               else
-               {
-                  break;
-               }
+               SimpleManagedResource found = child.route(address, index + 1, matches, segment);
+               if (found != null) return found;
             }
+            continue;
+         }
 
-            iterator.originalAddress().addPathTemplateResolver(
-               new PathTemplateResolverImpl(resource.pathElement, path.toString()));
-            
-            if (iterator.hasNext())
-            {
-               pai = new PathAddressIterator(iterator.currentAddress().copy());
-               AbstractManagedResource subResource = resource.getSubResource(pai);
-               if (subResource != null)
-               {
-                  PathAddress address = pai.originalAddress();
-                  for (PathTemplateResolver resolver : address.getPathTemplateResolvers())
-                  {
-                     iterator.originalAddress().addPathTemplateResolver(resolver);
-                  }
-                  while(iterator.hasNext()) iterator.next();
-                  return subResource;
-               }
-            }
-            else
+         int last = (span == -1) ? size : Math.min(size, index + span);
+
+         StringBuilder path = new StringBuilder();
+         for (int end = index; end < last; end++)
+         {
+            if (end > index) path.append('/');
+            path.append(address.get(end));
+
+            if (span != -1 && end - index + 1 < span) continue;
+
+            if (element.matches(path, 0, path.length()))
             {
-               return resource;
+               SimpleManagedResource found = child.route(address, end + 1, matches, path.toString());
+               if (found != null) return found;
             }
          }
       }
@@ -318,20 +273,49 @@ public class SimpleManagedResource extends AbstractManagedResource
       return null;
    }
 
-   private static class PathTemplateResolverImpl implements PathTemplateResolver
+   /**
+    * Continues routing after the path element of this resource matched {@code matchedPath}.
+    */
+   private SimpleManagedResource route(PathAddress address, int index, List<TemplateMatch> matches, String matchedPath)
    {
-      private PathElement pathElement;
-      private String path;
+      int mark = matches.size();
+      if (pathElement.isTemplate())
+      {
+         matches.add(new TemplateMatch(pathElement, matchedPath));
+      }
 
-      public PathTemplateResolverImpl(PathElement pathElement, String path)
+      SimpleManagedResource found = route(address, index, matches);
+      if (found == null)
       {
-         this.pathElement = pathElement;
-         this.path = path;
+         matches.subList(mark, matches.size()).clear();
+      }
+
+      return found;
+   }
+
+   private static final class OperationTable
+   {
+      private final Map<String, OperationEntry> entries;
+      private final Map<String, OperationEntry> inheritable;
+      private final Map<String, ManagedDescription> descriptions;
+
+      private OperationTable(Map<String, OperationEntry> entries, Map<String, OperationEntry> inheritable, Map<String, ManagedDescription> descriptions)
+      {
+         this.entries = Collections.unmodifiableMap(entries);
+         this.inheritable = Collections.unmodifiableMap(inheritable);
+         this.descriptions = Collections.unmodifiableMap(descriptions);
       }
-      @Override
-      public String resolve(String templateName)
+   }
+
+   private static final class TemplateMatch
+   {
+      private final PathElement pathElement;
+      private final String path;
+
+      private TemplateMatch(PathElement pathElement, String path)
       {
-         return pathElement.resolve(templateName, path);
+         this.pathElement = pathElement;
+         this.path = path;
       }
    }
 }
@@ -26,11 +26,19 @@ import org.gatein.management.api.ContentType;
 import org.gatein.management.api.binding.BindingException;
 import org.gatein.management.api.binding.BindingProvider;
 import org.gatein.management.api.binding.Marshaller;
+import org.gatein.management.api.operation.model.ExportJobModel;
 import org.gatein.management.api.operation.model.ExportResourceModel;
+import org.gatein.management.api.operation.model.ImportResourceModel;
+import org.gatein.management.api.operation.model.ImportResultModel;
 import org.gatein.management.api.operation.model.NoResultModel;
 import org.gatein.management.api.operation.model.ReadResourceModel;
+import org.gatein.management.core.api.binding.json.ExportJobModelMarshaller;
+import org.gatein.management.core.api.binding.json.ImportResultModelMarshaller;
 import org.gatein.management.core.api.binding.json.ReadResourceModelMarshaller;
+import org.gatein.management.core.api.binding.zip.ExportJobArchiveMarshaller;
 import org.gatein.management.core.api.binding.zip.ExportResourceModelMarshaller;
+import org.gatein.management.core.api.binding.zip.ImportResourceModelMarshaller;
+import org.gatein.management.core.api.operation.global.ExportJob;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -45,6 +53,29 @@ public class GlobalBindingProvider implements BindingProvider
    private static final Marshaller<ExportResourceModel> EXPORT_RESOURCE_MARSHALLER = new ExportResourceModelMarshaller();
    private static final Marshaller<ReadResourceModel> JSON_READ_RESOURCE_MODEL_MARSHALLER = new ReadResourceModelMarshaller();
    private static final Marshaller<NoResultModel> NO_RESULT_MODEL_MARSHALLER = new NoOpMarshaller();
+   private static final Marshaller<ExportJobModel> JSON_EXPORT_JOB_MODEL_MARSHALLER = new ExportJobModelMarshaller();
+   private static final Marshaller<ImportResultModel> JSON_IMPORT_RESULT_MODEL_MARSHALLER = new ImportResultModelMarshaller();
+   private static final Marshaller<ExportJob> EXPORT_JOB_ARCHIVE_MARSHALLER = new ExportJobArchiveMarshaller();
+   private static final Marshaller<ImportResourceModel> IMPORT_RESOURCE_MARSHALLER = new ImportResourceModelMarshaller();
+
+   private final Marshaller<ExportResourceModel> exportResourceMarshaller;
+   private final Marshaller<ImportResourceModel> importResourceMarshaller;
+
+   public GlobalBindingProvider()
+   {
+      this(EXPORT_RESOURCE_MARSHALLER);
+   }
+
+   public GlobalBindingProvider(Marshaller<ExportResourceModel> exportResourceMarshaller)
+   {
+      this(exportResourceMarshaller, IMPORT_RESOURCE_MARSHALLER);
+   }
+
+   public GlobalBindingProvider(Marshaller<ExportResourceModel> exportResourceMarshaller, Marshaller<ImportResourceModel> importResourceMarshaller)
+   {
+      this.exportResourceMarshaller = exportResourceMarshaller;
+      this.importResourceMarshaller = importResourceMarshaller;
+   }
 
    @Override
    public <T> Marshaller<T> getMarshaller(Class<T> type, ContentType contentType) throws BindingException
@@ -53,12 +84,28 @@ public class GlobalBindingProvider implements BindingProvider
 
       if (contentType == ContentType.ZIP && type == ExportResourceModel.class)
       {
-         return (Marshaller<T>) EXPORT_RESOURCE_MARSHALLER;
+         return (Marshaller<T>) exportResourceMarshaller;
+      }
+      else if (contentType == ContentType.ZIP && type == ImportResourceModel.class)
+      {
+         return (Marshaller<T>) importResourceMarshaller;
+      }
+      else if (contentType == ContentType.ZIP && type == ExportJob.class)
+      {
+         return (Marshaller<T>) EXPORT_JOB_ARCHIVE_MARSHALLER;
       }
       else if (contentType == ContentType.JSON && type == ReadResourceModel.class)
       {
          return (Marshaller<T>) JSON_READ_RESOURCE_MODEL_MARSHALLER;
       }
+      else if (contentType == ContentType.JSON && type == ExportJobModel.class)
+      {
+         return (Marshaller<T>) JSON_EXPORT_JOB_MODEL_MARSHALLER;
+      }
+      else if (contentType == ContentType.JSON && type == ImportResultModel.class)
+      {
+         return (Marshaller<T>) JSON_IMPORT_RESULT_MODEL_MARSHALLER;
+      }
 
       return null;
    }
@@ -0,0 +1,72 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.binding.json;
+
+import org.gatein.common.io.IOTools;
+import org.gatein.management.api.binding.BindingException;
+import org.gatein.management.api.binding.Marshaller;
+import org.gatein.management.api.operation.model.ImportResultModel;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+
+/**
+ * @version $Revision$
+ */
+public class ImportResultModelMarshaller implements Marshaller<ImportResultModel>
+{
+   @Override
+   public void marshal(ImportResultModel model, OutputStream outputStream) throws BindingException
+   {
+      PrintWriter printWriter = new PrintWriter(outputStream);
+      try
+      {
+         JSONStringer json = new JSONStringer();
+         json.object().key("applied").value(model.getAppliedCount());
+         json.key("skipped").value(model.getSkippedCount());
+         json.key("failed").value(model.getFailedCount());
+         json.endObject();
+
+         printWriter.write(new JSONObject(json.toString()).toString(3));
+         printWriter.flush();
+      }
+      catch (JSONException e)
+      {
+         throw new BindingException("Could not marshal to JSON format", e);
+      }
+      finally
+      {
+         IOTools.safeClose(printWriter);
+      }
+   }
+
+   @Override
+   public ImportResultModel unmarshal(InputStream inputStream) throws BindingException
+   {
+      throw new BindingException("Marshaller does not support unmarshalling of json data.");
+   }
+}
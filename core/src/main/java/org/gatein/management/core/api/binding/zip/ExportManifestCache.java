@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.binding.zip;
+
+import org.gatein.management.api.operation.model.ExportManifest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recently written export manifests, so an incremental export can refer to a previous export by the token of its
+ * manifest. Each management service has its own cache, dropped when the service is unloaded.
+ *
+ * @version $Revision$
+ */
+public class ExportManifestCache
+{
+   private static final int MAX_MANIFESTS = 16;
+
+   private final Map<String, ExportManifest> manifests = new LinkedHashMap<String, ExportManifest>(16, 0.75f, true)
+   {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, ExportManifest> eldest)
+      {
+         return size() > MAX_MANIFESTS;
+      }
+   };
+
+   /**
+    * @param token token of the manifest
+    * @return the manifest, or null if no recent export wrote a manifest with this token
+    */
+   public ExportManifest get(String token)
+   {
+      synchronized (manifests)
+      {
+         return manifests.get(token);
+      }
+   }
+
+   public void put(ExportManifest manifest)
+   {
+      synchronized (manifests)
+      {
+         manifests.put(manifest.getToken(), manifest);
+      }
+   }
+}
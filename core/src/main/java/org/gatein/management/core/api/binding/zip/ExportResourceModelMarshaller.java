@@ -25,85 +25,458 @@ package org.gatein.management.core.api.binding.zip;
 import org.gatein.common.io.IOTools;
 import org.gatein.management.api.binding.BindingException;
 import org.gatein.management.api.binding.Marshaller;
+import org.gatein.management.api.controller.SpoolingOutputStream;
+import org.gatein.management.api.operation.model.ExportManifest;
 import org.gatein.management.api.operation.model.ExportResourceModel;
 import org.gatein.management.api.operation.model.ExportTask;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 /**
+ * Marshals the export tasks of an {@link ExportResourceModel} into a zip archive. By default the archive is streamed
+ * directly to the output stream. In spooling mode the archive is first written to a {@link SpoolingOutputStream}, which
+ * keeps small archives in memory and moves larger ones to a temporary file, so nothing is written to the output stream
+ * unless all export tasks succeed.
+ * <p/>
+ * When given an executor, export tasks run concurrently into in-memory buffers while the entries are written to the
+ * archive in the order of the tasks, keeping the archive deterministic. Tasks are submitted ahead of the entry being
+ * written as long as the number of pending tasks and the size of the buffered entries stay within their limits.
+ * <p/>
+ * Tasks of a model created with a task stream are pulled as entries are written, so the archive is written while the
+ * tasks that follow are still being produced.
+ * <p/>
+ * The compression level of the model applies to all entries. Entries stored without compression are buffered in
+ * memory, as their size and checksum precede their data in the archive.
+ * <p/>
+ * Entries of a deterministic archive all have the same time, so the archive only depends on the entries exported and
+ * their order.
+ * <p/>
+ * When the model asks for a manifest, an {@link ExportManifest} recording each entry is written as the last entry of
+ * the archive. Given the manifest of a previous export, only entries which changed since are written, and the manifest
+ * lists the entries deleted since.
+ *
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  * @version $Revision$
  */
 public class ExportResourceModelMarshaller implements Marshaller<ExportResourceModel>
 {
+   // Time of the entries of deterministic archives, as a local time since zip entries store the local time
+   private static final long DETERMINISTIC_TIME = new GregorianCalendar(2000, Calendar.JANUARY, 1).getTimeInMillis();
+
+   private final boolean spool;
+   private final ExecutorService executor;
+   private final int maxPendingTasks;
+   private final long maxBufferedBytes;
+   private final ExportManifestCache manifestCache;
+
+   public ExportResourceModelMarshaller()
+   {
+      this(false);
+   }
+
+   public ExportResourceModelMarshaller(boolean spool)
+   {
+      this(spool, null, 0, 0);
+   }
+
+   /**
+    * @param spool whether to spool the archive before writing it to the output stream
+    * @param executor executor running the export tasks, or null to run them one after another while writing
+    * @param maxPendingTasks maximum number of tasks submitted ahead of the entry being written
+    * @param maxBufferedBytes no further tasks are submitted while the finished entries waiting to be written exceed
+    * this size
+    */
+   public ExportResourceModelMarshaller(boolean spool, ExecutorService executor, int maxPendingTasks, long maxBufferedBytes)
+   {
+      this(spool, executor, maxPendingTasks, maxBufferedBytes, null);
+   }
+
+   /**
+    * @param spool whether to spool the archive before writing it to the output stream
+    * @param executor executor running the export tasks, or null to run them one after another while writing
+    * @param maxPendingTasks maximum number of tasks submitted ahead of the entry being written
+    * @param maxBufferedBytes no further tasks are submitted while the finished entries waiting to be written exceed
+    * this size
+    * @param manifestCache cache of the manifests written, so later incremental exports can refer to them, or null
+    */
+   public ExportResourceModelMarshaller(boolean spool, ExecutorService executor, int maxPendingTasks, long maxBufferedBytes, ExportManifestCache manifestCache)
+   {
+      if (executor != null && maxPendingTasks < 1) throw new IllegalArgumentException("maxPendingTasks must be at least 1");
+
+      this.spool = spool;
+      this.executor = executor;
+      this.maxPendingTasks = maxPendingTasks;
+      this.maxBufferedBytes = maxBufferedBytes;
+      this.manifestCache = manifestCache;
+   }
+
    @Override
    public void marshal(ExportResourceModel model, OutputStream outputStream) throws BindingException
    {
-      File file;
-      ZipOutputStream zos = null;
+      if (spool)
+      {
+         spool(model, outputStream);
+      }
+      else
+      {
+         BufferedOutputStream bos = new BufferedOutputStream(outputStream);
+         writeZip(model, bos);
+         try
+         {
+            bos.flush();
+         }
+         catch (IOException e)
+         {
+            throw new BindingException("IOException writing data to final output stream.", e);
+         }
+      }
+   }
+
+   private void spool(ExportResourceModel model, OutputStream outputStream) throws BindingException
+   {
+      SpoolingOutputStream sos = new SpoolingOutputStream();
       try
       {
-         file = File.createTempFile("gatein-export", ".zip");
-         zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+         writeZip(model, sos);
+         try
+         {
+            sos.writeTo(outputStream);
+         }
+         catch (IOException e)
+         {
+            throw new BindingException("IOException writing data to final output stream.", e);
+         }
+      }
+      finally
+      {
+         sos.release();
+      }
+   }
+
+   /**
+    * Writes the zip archive to the output stream, leaving the output stream open for the caller.
+    */
+   private void writeZip(ExportResourceModel model, OutputStream outputStream) throws BindingException
+   {
+      ZipOutputStream zos = new ZipOutputStream(new NonClosingOutputStream(outputStream));
+      boolean stored = (model.getCompressionLevel() == ExportResourceModel.STORED);
+      if (stored)
+      {
+         zos.setMethod(ZipOutputStream.STORED);
       }
-      catch (IOException e)
+      else
       {
-         throw new BindingException("Could not create temp file for export.", e);
+         zos.setLevel(model.getCompressionLevel());
       }
 
+      ExportManifest manifest = (model.isManifest()) ? new ExportManifest() : null;
+      ArchiveWriter writer = new ArchiveWriter(zos, stored, manifest, model.getPreviousManifest(), model.isDeterministic());
       try
       {
-         if (model.getTasks().isEmpty())
+         Iterator<ExportTask> tasks = model.getTaskIterator();
+         if (!tasks.hasNext())
          {
-            zos.putNextEntry(new ZipEntry(""));
+            // An archive needs at least one entry
+            if (manifest == null) writer.writeEntry("", new EntryBuffer());
+         }
+         else if (executor != null)
+         {
+            writeConcurrently(tasks, writer);
          }
          else
          {
-            for (ExportTask task : model.getTasks())
+            while (tasks.hasNext())
             {
-               String entry = task.getEntry();
-               zos.putNextEntry(new ZipEntry(entry));
-
-               // Call export task responsible for writing the data.
-               task.export(zos);
-
-               zos.closeEntry();
+               writer.write(tasks.next());
             }
          }
-         zos.flush();
+
+         if (manifest != null)
+         {
+            writer.writeManifest();
+            if (manifestCache != null) manifestCache.put(manifest);
+         }
          zos.finish();
       }
+      catch (ExecutionException e)
+      {
+         throw new BindingException("Exception writing data to zip.", e.getCause());
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new BindingException("Interrupted writing data to zip.", e);
+      }
       catch (Throwable t)
       {
          throw new BindingException("Exception writing data to zip.", t);
       }
       finally
       {
+         // Releases the deflater of the zip stream
          IOTools.safeClose(zos);
       }
+   }
 
+   private void writeConcurrently(Iterator<ExportTask> tasks, ArchiveWriter writer) throws IOException, InterruptedException, ExecutionException
+   {
+      final boolean hash = (writer.manifest != null);
+      final AtomicLong bufferedBytes = new AtomicLong();
+      LinkedList<PendingEntry> pending = new LinkedList<PendingEntry>();
       try
       {
-         InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
-         IOTools.copy(inputStream, outputStream);
+         while (true)
+         {
+            // Always submit the task of the entry to write, and more while within limits
+            while (tasks.hasNext() && (pending.isEmpty() ||
+               (pending.size() < maxPendingTasks && bufferedBytes.get() < maxBufferedBytes)))
+            {
+               final ExportTask task = tasks.next();
+               pending.add(new PendingEntry(task.getEntry(), executor.submit(new Callable<EntryBuffer>()
+               {
+                  @Override
+                  public EntryBuffer call() throws Exception
+                  {
+                     EntryBuffer buffer = new EntryBuffer();
+                     task.export(buffer);
+                     if (hash) buffer.hash();
+                     bufferedBytes.addAndGet(buffer.size());
+                     return buffer;
+                  }
+               })));
+            }
+
+            if (pending.isEmpty()) break;
+
+            PendingEntry entry = pending.removeFirst();
+            EntryBuffer buffer = entry.future.get();
+
+            writer.write(entry.name, buffer);
+
+            bufferedBytes.addAndGet(-buffer.size());
+         }
       }
-      catch (FileNotFoundException e)
+      finally
       {
-         throw new BindingException("Could not read from temporary zip file " + file, e);
+         // Only tasks which are not written yet remain, which are of no use once writing the archive failed
+         for (PendingEntry entry : pending)
+         {
+            entry.future.cancel(true);
+         }
       }
-      catch (IOException e)
+   }
+
+   private static class PendingEntry
+   {
+      private final String name;
+      private final Future<EntryBuffer> future;
+
+      private PendingEntry(String name, Future<EntryBuffer> future)
+      {
+         this.name = name;
+         this.future = future;
+      }
+   }
+
+   /**
+    * Writes entries to the archive, recording them in the manifest if any. Entries are buffered when their size or hash
+    * is needed before writing them, which is the case for stored entries and incremental exports.
+    */
+   private static class ArchiveWriter
+   {
+      private final ZipOutputStream zos;
+      private final boolean stored;
+      private final ExportManifest manifest;
+      private final ExportManifest previousManifest;
+      private final boolean deterministic;
+
+      private ArchiveWriter(ZipOutputStream zos, boolean stored, ExportManifest manifest, ExportManifest previousManifest, boolean deterministic)
+      {
+         this.zos = zos;
+         this.stored = stored;
+         this.manifest = manifest;
+         this.previousManifest = previousManifest;
+         this.deterministic = deterministic;
+      }
+
+      private void write(ExportTask task) throws IOException
+      {
+         if (stored || previousManifest != null)
+         {
+            EntryBuffer buffer = new EntryBuffer();
+            task.export(buffer);
+            write(task.getEntry(), buffer);
+         }
+         else
+         {
+            zos.putNextEntry(newEntry(task.getEntry()));
+
+            // Call export task responsible for writing the data.
+            if (manifest == null)
+            {
+               task.export(zos);
+            }
+            else
+            {
+               HashingOutputStream hos = new HashingOutputStream(zos);
+               task.export(hos);
+               manifest.addEntry(task.getEntry(), hos.size, ExportManifest.toHex(hos.digest.digest()));
+            }
+
+            zos.closeEntry();
+         }
+      }
+
+      private void write(String name, EntryBuffer buffer) throws IOException
+      {
+         if (manifest != null)
+         {
+            String hash = buffer.hash();
+            manifest.addEntry(name, buffer.size(), hash);
+
+            // Unchanged entries are only recorded in the manifest of an incremental export
+            if (previousManifest != null && previousManifest.isUnchanged(name, buffer.size(), hash)) return;
+         }
+
+         writeEntry(name, buffer);
+      }
+
+      private void writeManifest() throws IOException
+      {
+         if (previousManifest != null)
+         {
+            for (ExportManifest.Entry entry : previousManifest.getEntries())
+            {
+               if (manifest.getEntry(entry.getName()) == null) manifest.addDeletion(entry.getName());
+            }
+         }
+
+         EntryBuffer buffer = new EntryBuffer();
+         buffer.write(manifest.toString().getBytes("UTF-8"));
+         writeEntry(ExportManifest.ENTRY_NAME, buffer);
+      }
+
+      private ZipEntry newEntry(String name)
+      {
+         ZipEntry entry = new ZipEntry(name);
+         if (deterministic) entry.setTime(DETERMINISTIC_TIME);
+
+         return entry;
+      }
+
+      private void writeEntry(String name, EntryBuffer buffer) throws IOException
+      {
+         ZipEntry entry = newEntry(name);
+         if (stored)
+         {
+            entry.setSize(buffer.size());
+            entry.setCompressedSize(buffer.size());
+            entry.setCrc(buffer.crc());
+         }
+
+         zos.putNextEntry(entry);
+         buffer.writeTo(zos);
+         zos.closeEntry();
+      }
+   }
+
+   private static class EntryBuffer extends ByteArrayOutputStream
+   {
+      private String hash;
+
+      private EntryBuffer()
+      {
+         super(8192);
+      }
+
+      private long crc()
+      {
+         CRC32 crc = new CRC32();
+         crc.update(buf, 0, count);
+         return crc.getValue();
+      }
+
+      private String hash()
+      {
+         if (hash == null)
+         {
+            MessageDigest digest = ExportManifest.newDigest();
+            digest.update(buf, 0, count);
+            hash = ExportManifest.toHex(digest.digest());
+         }
+
+         return hash;
+      }
+   }
+
+   private static class HashingOutputStream extends FilterOutputStream
+   {
+      private final MessageDigest digest = ExportManifest.newDigest();
+      private long size;
+
+      private HashingOutputStream(OutputStream out)
+      {
+         super(out);
+      }
+
+      @Override
+      public void write(int b) throws IOException
+      {
+         out.write(b);
+         digest.update((byte) b);
+         size++;
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException
+      {
+         out.write(b, off, len);
+         digest.update(b, off, len);
+         size += len;
+      }
+
+      @Override
+      public void close() throws IOException
+      {
+         flush();
+      }
+   }
+
+   private static class NonClosingOutputStream extends FilterOutputStream
+   {
+      private NonClosingOutputStream(OutputStream out)
+      {
+         super(out);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException
+      {
+         out.write(b, off, len);
+      }
+
+      @Override
+      public void close() throws IOException
       {
-         throw new BindingException("IOException writing data to final output stream.", e);
+         flush();
       }
    }
 
@@ -0,0 +1,531 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.binding.zip;
+
+import org.gatein.common.io.IOTools;
+import org.gatein.common.logging.Logger;
+import org.gatein.common.logging.LoggerFactory;
+import org.gatein.management.api.binding.BindingException;
+import org.gatein.management.api.binding.Marshaller;
+import org.gatein.management.api.operation.model.CurrentStateDigester;
+import org.gatein.management.api.operation.model.ExportManifest;
+import org.gatein.management.api.operation.model.ImportResourceModel;
+import org.gatein.management.api.operation.model.ImportResultModel;
+import org.gatein.management.api.operation.model.ImportTask;
+import org.gatein.management.api.operation.model.TwoPhaseImportTask;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Unmarshals an uploaded zip archive into an {@link ImportResourceModel}. The archive is spooled once to a temporary
+ * file and opened as a {@link ZipFile}, so its entries are indexed up front and read in any order without holding the
+ * archive in memory.
+ * <p/>
+ * When given an executor, entries dispatched to an import task are imported concurrently, each entry being read
+ * through its own stream of the archive. Entries dispatched to a two phase import task are validated concurrently,
+ * then applied one after another on the calling thread.
+ * <p/>
+ * In a delta import, the hash of each entry is compared with the hash of the current state given by the import task,
+ * using the manifest of the archive when it has one so unchanged entries are not even read.
+ *
+ * @version $Revision$
+ */
+public class ImportResourceModelMarshaller implements Marshaller<ImportResourceModel>
+{
+   private static final Logger log = LoggerFactory.getLogger(ImportResourceModelMarshaller.class);
+
+   private final ExecutorService executor;
+   private final int maxPendingTasks;
+
+   public ImportResourceModelMarshaller()
+   {
+      this(null, 0);
+   }
+
+   /**
+    * @param executor executor importing entries, or null to import them one after another
+    * @param maxPendingTasks maximum number of entries handed to the executor at any time
+    */
+   public ImportResourceModelMarshaller(ExecutorService executor, int maxPendingTasks)
+   {
+      if (executor != null && maxPendingTasks < 1) throw new IllegalArgumentException("maxPendingTasks must be at least 1");
+
+      this.executor = executor;
+      this.maxPendingTasks = maxPendingTasks;
+   }
+
+   @Override
+   public void marshal(ImportResourceModel object, OutputStream outputStream) throws BindingException
+   {
+      throw new UnsupportedOperationException();
+   }
+
+   @Override
+   public ImportResourceModel unmarshal(InputStream inputStream) throws BindingException
+   {
+      File file = null;
+      ZipFile zipFile = null;
+      try
+      {
+         file = File.createTempFile("gatein-import", ".zip");
+         OutputStream out = new FileOutputStream(file);
+         try
+         {
+            IOTools.copy(inputStream, out);
+         }
+         finally
+         {
+            IOTools.safeClose(out);
+         }
+
+         zipFile = new ZipFile(file);
+         Map<String, ZipEntry> entries = new LinkedHashMap<String, ZipEntry>();
+         ExportManifest manifest = null;
+         Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+         while (enumeration.hasMoreElements())
+         {
+            ZipEntry entry = enumeration.nextElement();
+            String name = entry.getName();
+            if (name.equals(ExportManifest.ENTRY_NAME))
+            {
+               manifest = readManifest(zipFile, entry);
+            }
+            else if (!entry.isDirectory() && name.length() > 0)
+            {
+               entries.put(name, entry);
+            }
+         }
+
+         return new Archive(file, zipFile, entries, manifest);
+      }
+      catch (IOException e)
+      {
+         if (zipFile != null) close(zipFile);
+         if (file != null) delete(file);
+
+         throw new BindingException("Exception reading zip archive.", e);
+      }
+   }
+
+   // Manifest of the archive, whose hashes spare reading entries to compare them in a delta import
+   private static ExportManifest readManifest(ZipFile zipFile, ZipEntry entry) throws IOException
+   {
+      InputStream in = zipFile.getInputStream(entry);
+      try
+      {
+         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         IOTools.copy(in, baos);
+         return ExportManifest.parse(baos.toString("UTF-8"));
+      }
+      catch (ParseException e)
+      {
+         log.debug("Ignoring invalid manifest of import archive " + zipFile.getName(), e);
+         return null;
+      }
+      finally
+      {
+         IOTools.safeClose(in);
+      }
+   }
+
+   private static void close(ZipFile zipFile)
+   {
+      try
+      {
+         zipFile.close();
+      }
+      catch (IOException e)
+      {
+         log.debug("Exception closing import archive " + zipFile.getName(), e);
+      }
+   }
+
+   private static void delete(File file)
+   {
+      if (!file.delete() && file.exists())
+      {
+         file.deleteOnExit();
+      }
+   }
+
+   private class Archive implements ImportResourceModel
+   {
+      private final File file;
+      private final ZipFile zipFile;
+      private final Map<String, ZipEntry> entries;
+      private final ExportManifest manifest;
+      private final AtomicInteger appliedCount = new AtomicInteger();
+      private final AtomicInteger skippedCount = new AtomicInteger();
+      private final AtomicInteger failedCount = new AtomicInteger();
+      private volatile boolean dispatched;
+      private volatile boolean released;
+      private boolean delta;
+
+      private Archive(File file, ZipFile zipFile, Map<String, ZipEntry> entries, ExportManifest manifest)
+      {
+         this.file = file;
+         this.zipFile = zipFile;
+         this.entries = entries;
+         this.manifest = manifest;
+      }
+
+      @Override
+      public Set<String> getEntries()
+      {
+         return Collections.unmodifiableSet(entries.keySet());
+      }
+
+      @Override
+      public InputStream getEntryStream(String entry) throws IOException
+      {
+         if (released) throw new IllegalStateException("Import archive has been released.");
+
+         ZipEntry zipEntry = entries.get(entry);
+         return (zipEntry == null) ? null : zipFile.getInputStream(zipEntry);
+      }
+
+      @Override
+      public String getEntryHash(String entry) throws IOException
+      {
+         if (!entries.containsKey(entry)) return null;
+
+         ExportManifest.Entry manifestEntry = (manifest == null) ? null : manifest.getEntry(entry);
+         if (manifestEntry != null) return manifestEntry.getHash();
+
+         MessageDigest digest = ExportManifest.newDigest();
+         InputStream in = getEntryStream(entry);
+         try
+         {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+               digest.update(buffer, 0, read);
+            }
+         }
+         finally
+         {
+            IOTools.safeClose(in);
+         }
+
+         return ExportManifest.toHex(digest.digest());
+      }
+
+      @Override
+      public boolean isDelta()
+      {
+         return delta;
+      }
+
+      @Override
+      public void setDelta(boolean delta)
+      {
+         this.delta = delta;
+      }
+
+      @Override
+      public void importEntries(final ImportTask task) throws IOException
+      {
+         forEachEntry(digester(task), new EntryCallback<Void>()
+         {
+            @Override
+            public Void call(String entry, InputStream inputStream) throws IOException
+            {
+               task.importEntry(entry, inputStream);
+               appliedCount.incrementAndGet();
+               return null;
+            }
+         });
+      }
+
+      @Override
+      public <T> void importEntries(final TwoPhaseImportTask<T> task) throws IOException
+      {
+         List<T> results = forEachEntry(digester(task), new EntryCallback<T>()
+         {
+            @Override
+            public T call(String entry, InputStream inputStream) throws IOException
+            {
+               T data = task.validate(entry, inputStream);
+               if (data == null) skippedCount.incrementAndGet();
+
+               return data;
+            }
+         });
+
+         List<ValidatedEntry<T>> validated = new ArrayList<ValidatedEntry<T>>(results.size());
+         int index = 0;
+         for (String entry : entries.keySet())
+         {
+            T data = results.get(index++);
+            if (data != null)
+            {
+               validated.add(new ValidatedEntry<T>(entry, data, task.getOrder(entry, data)));
+            }
+         }
+
+         // Stable sort, keeping archive order for entries of the same order
+         Collections.sort(validated);
+         for (ValidatedEntry<T> entry : validated)
+         {
+            boolean applied = false;
+            try
+            {
+               task.apply(entry.entry, entry.data);
+               applied = true;
+            }
+            finally
+            {
+               if (applied)
+               {
+                  appliedCount.incrementAndGet();
+               }
+               else
+               {
+                  failedCount.incrementAndGet();
+               }
+            }
+         }
+      }
+
+      @Override
+      public ImportResultModel getResult()
+      {
+         if (!dispatched) return null;
+
+         return new ImportResultModel(appliedCount.get(), skippedCount.get(), failedCount.get());
+      }
+
+      private CurrentStateDigester digester(Object task)
+      {
+         return (delta && task instanceof CurrentStateDigester) ? (CurrentStateDigester) task : null;
+      }
+
+      /**
+       * Calls the callback with each entry, concurrently when given an executor. Given a digester, entries unchanged
+       * from the current state are skipped, with a null result.
+       *
+       * @return results of the callback in archive order
+       */
+      private <R> List<R> forEachEntry(final CurrentStateDigester digester, final EntryCallback<R> callback) throws IOException
+      {
+         dispatched = true;
+         final List<String> names = new ArrayList<String>(entries.keySet());
+         List<R> results = new ArrayList<R>(Collections.<R>nCopies(names.size(), null));
+         if (executor == null || names.size() < 2)
+         {
+            for (int i = 0; i < names.size(); i++)
+            {
+               results.set(i, call(digester, callback, names.get(i)));
+            }
+            return results;
+         }
+
+         // Entries are awaited as they complete rather than in archive order, so the first failure is seen right away
+         CompletionService<R> completionService = new ExecutorCompletionService<R>(executor);
+         Map<Future<R>, Integer> pending = new HashMap<Future<R>, Integer>();
+         final AtomicBoolean aborted = new AtomicBoolean();
+         int next = 0;
+         boolean completed = false;
+         try
+         {
+            while (next < names.size() || !pending.isEmpty())
+            {
+               while (next < names.size() && pending.size() < maxPendingTasks)
+               {
+                  final String entry = names.get(next);
+                  Future<R> future = completionService.submit(new Callable<R>()
+                  {
+                     @Override
+                     public R call() throws Exception
+                     {
+                        if (aborted.get()) return null;
+
+                        return Archive.this.call(digester, callback, entry);
+                     }
+                  });
+                  pending.put(future, next++);
+               }
+
+               Future<R> future = take(completionService);
+               results.set(pending.remove(future), await(future));
+            }
+            completed = true;
+         }
+         finally
+         {
+            if (!completed)
+            {
+               // Entries not started are skipped. Entries already running are waited for, rather than cancelled, so
+               // none is still reading the archive or importing once this fails.
+               aborted.set(true);
+               drain(completionService, pending.size());
+            }
+         }
+
+         return results;
+      }
+
+      private <R> void drain(CompletionService<R> completionService, int count)
+      {
+         boolean interrupted = false;
+         for (int i = 0; i < count;)
+         {
+            try
+            {
+               completionService.take();
+               i++;
+            }
+            catch (InterruptedException e)
+            {
+               interrupted = true;
+            }
+         }
+
+         if (interrupted) Thread.currentThread().interrupt();
+      }
+
+      private <R> Future<R> take(CompletionService<R> completionService) throws IOException
+      {
+         try
+         {
+            return completionService.take();
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for entries to be imported.");
+         }
+      }
+
+      private <R> R await(Future<R> future) throws IOException
+      {
+         try
+         {
+            return future.get();
+         }
+         catch (ExecutionException e)
+         {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for entries to be imported.");
+         }
+      }
+
+      private <R> R call(CurrentStateDigester digester, EntryCallback<R> callback, String entry) throws IOException
+      {
+         boolean completed = false;
+         InputStream in = null;
+         try
+         {
+            if (digester != null)
+            {
+               String currentHash = digester.getCurrentHash(entry);
+               if (currentHash != null && currentHash.equals(getEntryHash(entry)))
+               {
+                  skippedCount.incrementAndGet();
+                  completed = true;
+                  return null;
+               }
+            }
+
+            in = getEntryStream(entry);
+            R result = callback.call(entry, in);
+            completed = true;
+            return result;
+         }
+         finally
+         {
+            if (in != null) IOTools.safeClose(in);
+            if (!completed) failedCount.incrementAndGet();
+         }
+      }
+
+      @Override
+      public void release()
+      {
+         if (released) return;
+
+         released = true;
+         close(zipFile);
+         delete(file);
+      }
+   }
+
+   private static interface EntryCallback<R>
+   {
+      R call(String entry, InputStream inputStream) throws IOException;
+   }
+
+   private static class ValidatedEntry<T> implements Comparable<ValidatedEntry<T>>
+   {
+      private final String entry;
+      private final T data;
+      private final int order;
+
+      private ValidatedEntry(String entry, T data, int order)
+      {
+         this.entry = entry;
+         this.data = data;
+         this.order = order;
+      }
+
+      @Override
+      public int compareTo(ValidatedEntry<T> other)
+      {
+         return (order < other.order) ? -1 : ((order == other.order) ? 0 : 1);
+      }
+   }
+}
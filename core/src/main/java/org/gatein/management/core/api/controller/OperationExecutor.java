@@ -0,0 +1,179 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.controller;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs operations on an executor, limiting the number of operations of the same name running at once. Operations
+ * beyond their limit wait in a queue of their own rather than occupying a thread of the executor, so a flood of one
+ * operation leaves threads to the others.
+ *
+ * @version $Revision$
+ */
+public class OperationExecutor
+{
+   private final Executor executor;
+   private final int defaultLimit;
+   private final Map<String, Integer> limits;
+   private final int maxPending;
+   private final Map<String, Lane> lanes = new HashMap<String, Lane>();
+
+   /**
+    * @param executor executor running the operations
+    * @param defaultLimit maximum number of operations of the same name running at once
+    * @param limits limits of specific operations, by operation name
+    * @param maxPending maximum number of operations of the same name waiting to run, beyond which they are rejected
+    */
+   public OperationExecutor(Executor executor, int defaultLimit, Map<String, Integer> limits, int maxPending)
+   {
+      if (executor == null) throw new IllegalArgumentException("executor is null");
+      if (defaultLimit < 1) throw new IllegalArgumentException("defaultLimit must be at least 1");
+
+      this.executor = executor;
+      this.defaultLimit = defaultLimit;
+      this.limits = new HashMap<String, Integer>(limits);
+      this.maxPending = maxPending;
+   }
+
+   /**
+    * @param operationName name of the operation
+    * @param callable the operation
+    * @return future of the result of the operation
+    * @throws RejectedExecutionException if too many operations of that name are waiting to run, or the executor
+    * rejected the operation
+    */
+   public <T> Future<T> submit(String operationName, Callable<T> callable) throws RejectedExecutionException
+   {
+      FutureTask<T> task = new FutureTask<T>(callable);
+      lane(operationName).submit(task);
+      return task;
+   }
+
+   private synchronized Lane lane(String operationName)
+   {
+      Lane lane = lanes.get(operationName);
+      if (lane == null)
+      {
+         Integer limit = limits.get(operationName);
+         lane = new Lane(operationName, (limit == null) ? defaultLimit : limit);
+         lanes.put(operationName, lane);
+      }
+
+      return lane;
+   }
+
+   private class Lane
+   {
+      private final String operationName;
+      private final int limit;
+      private final LinkedList<FutureTask<?>> pending = new LinkedList<FutureTask<?>>();
+      private int running;
+
+      private Lane(String operationName, int limit)
+      {
+         this.operationName = operationName;
+         this.limit = limit;
+      }
+
+      private void submit(FutureTask<?> task)
+      {
+         synchronized (this)
+         {
+            if (running >= limit)
+            {
+               if (pending.size() >= maxPending)
+               {
+                  throw new RejectedExecutionException("Too many " + operationName + " operations waiting to execute");
+               }
+
+               pending.add(task);
+               return;
+            }
+
+            running++;
+         }
+
+         try
+         {
+            executor.execute(runner(task));
+         }
+         catch (RejectedExecutionException e)
+         {
+            completed();
+            throw e;
+         }
+      }
+
+      private Runnable runner(final FutureTask<?> task)
+      {
+         return new Runnable()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  task.run();
+               }
+               finally
+               {
+                  completed();
+               }
+            }
+         };
+      }
+
+      // Submits the next operation waiting, if any, to the executor once an operation completed
+      private void completed()
+      {
+         FutureTask<?> next;
+         synchronized (this)
+         {
+            next = pending.poll();
+            if (next == null)
+            {
+               running--;
+               return;
+            }
+         }
+
+         try
+         {
+            executor.execute(runner(next));
+         }
+         catch (RejectedExecutionException e)
+         {
+            next.cancel(false);
+            completed();
+         }
+      }
+   }
+}
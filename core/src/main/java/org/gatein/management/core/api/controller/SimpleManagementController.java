@@ -29,38 +29,94 @@ import org.gatein.management.api.ManagedResource;
 import org.gatein.management.api.ManagementService;
 import org.gatein.management.api.PathAddress;
 import org.gatein.management.api.RuntimeContext;
+import org.gatein.management.api.ResolvableManagedResource;
 import org.gatein.management.api.binding.BindingProvider;
 import org.gatein.management.api.controller.ManagedRequest;
 import org.gatein.management.api.controller.ManagedResponse;
-import org.gatein.management.api.controller.ManagementController;
+import org.gatein.management.api.controller.AsyncManagementController;
 import org.gatein.management.api.exceptions.OperationException;
 import org.gatein.management.api.exceptions.ResourceNotFoundException;
 import org.gatein.management.api.operation.OperationHandler;
 import org.gatein.management.api.operation.model.NamedDescription;
 import org.gatein.management.api.operation.model.ReadResourceModel;
+import org.gatein.management.core.api.AbstractManagedResource;
 import org.gatein.management.core.api.operation.BasicResultHandler;
 import org.gatein.management.core.api.operation.OperationContextImpl;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  * @version $Revision$
  */
 //TODO: Add some logging
-public class SimpleManagementController implements ManagementController
+public class SimpleManagementController implements AsyncManagementController
 {
    private static final Logger log = LoggerFactory.getLogger(SimpleManagementController.class);
 
+   /**
+    * Number of threads executing requests in the background. Only requests executed through
+    * {@link #executeAsync(ManagedRequest)} use these threads, which the REST controller only does for the operations
+    * configured to execute in the background, none by default.
+    */
+   public static final String ASYNC_THREADS_PROPERTY = "gatein.management.async.threads";
+
+   /**
+    * Maximum number of requests for the same operation executing in the background at once. Defaults to half the
+    * threads, so a single operation can not take all threads. The limit of a specific operation is set by a property
+    * whose name is this one followed by '.' and the operation name.
+    */
+   public static final String ASYNC_OPERATION_LIMIT_PROPERTY = "gatein.management.async.operation-limit";
+
+   // Limit on the number of requests for the same operation waiting for a thread, beyond which requests are rejected
+   private static final int ASYNC_PENDING_LIMIT = 64;
+
    private final ManagementService managementService;
    private final RuntimeContext runtimeContext;
    private ManagedResource rootResource;
+   private OperationExecutor operationExecutor;
+   private ThreadPoolExecutor asyncExecutor;
 
    public SimpleManagementController(ManagementService managementService, RuntimeContext runtimeContext)
+   {
+      this(managementService, runtimeContext, null);
+   }
+
+   /**
+    * @param operationExecutor executor of requests executed in the background, or null to create one configured by
+    * system properties on first use, in which case {@link #shutdown()} must be called once the controller is no longer
+    * used
+    */
+   public SimpleManagementController(ManagementService managementService, RuntimeContext runtimeContext, OperationExecutor operationExecutor)
    {
       this.managementService = managementService;
       this.runtimeContext = runtimeContext;
+      this.operationExecutor = operationExecutor;
+   }
+
+   @Override
+   public Future<ManagedResponse> executeAsync(final ManagedRequest request) throws RejectedExecutionException
+   {
+      return getOperationExecutor().submit(request.getOperationName(), new Callable<ManagedResponse>()
+      {
+         @Override
+         public ManagedResponse call() throws Exception
+         {
+            return execute(request);
+         }
+      });
    }
 
    @Override
@@ -83,12 +139,13 @@ public class SimpleManagementController implements ManagementController
       }
       
       ManagedResource root = getRootResource();
-      if (root.getSubResource(address) == null)
+      ResolvableManagedResource.Resolution resolution = AbstractManagedResource.resolve(root, address, operationName);
+      if (resolution == null)
       {
          throw new ResourceNotFoundException("Could not locate managed resource for address '" + address + "'");
       }
 
-      OperationHandler operationHandler = root.getOperationHandler(address, operationName);
+      OperationHandler operationHandler = resolution.getOperationHandler();
       if (operationHandler != null)
       {
          // Obtain binding provider given managed component.
@@ -113,12 +170,12 @@ public class SimpleManagementController implements ManagementController
                ReadResourceModel readResource = (ReadResourceModel) result;
                if (!readResource.isChildDescriptionsSet())
                {
-                  populateChildDescriptions(root, address, readResource);
+                  populateChildDescriptions(root, address, resolution.getResource(), readResource);
                }
 
                if (readResource.getOperations().isEmpty())
                {
-                  Map<String, ManagedDescription> descriptions = root.getOperationDescriptions(address);
+                  Map<String, ManagedDescription> descriptions = resolution.getOperationDescriptions();
                   for (Map.Entry<String, ManagedDescription> desc : descriptions.entrySet())
                   {
                      readResource.addOperation(new NamedDescription(desc.getKey(), desc.getValue().getDescription()));
@@ -136,9 +193,51 @@ public class SimpleManagementController implements ManagementController
       }
    }
    
-   private void populateChildDescriptions(ManagedResource root, PathAddress address, ReadResourceModel readResource)
+   private synchronized OperationExecutor getOperationExecutor()
+   {
+      if (operationExecutor == null)
+      {
+         int threads = Integer.getInteger(ASYNC_THREADS_PROPERTY, 4);
+         int defaultLimit = Integer.getInteger(ASYNC_OPERATION_LIMIT_PROPERTY, Math.max(1, threads / 2));
+
+         Map<String, Integer> limits = new HashMap<String, Integer>();
+         String prefix = ASYNC_OPERATION_LIMIT_PROPERTY + ".";
+         for (String name : System.getProperties().stringPropertyNames())
+         {
+            if (name.startsWith(prefix))
+            {
+               limits.put(name.substring(prefix.length()), Integer.getInteger(name, defaultLimit));
+            }
+         }
+
+         // Core threads time out, so the pool costs nothing until requests are executed in the background
+         asyncExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new AsyncThreadFactory());
+         asyncExecutor.allowCoreThreadTimeOut(true);
+
+         operationExecutor = new OperationExecutor(asyncExecutor, defaultLimit, limits, ASYNC_PENDING_LIMIT);
+      }
+
+      return operationExecutor;
+   }
+
+   /**
+    * Shuts down the threads executing requests in the background, if the controller created them. Requests already
+    * handed to the threads still execute, while requests waiting for their operation limit are cancelled. The threads
+    * are created again if requests are executed in the background afterwards.
+    */
+   public synchronized void shutdown()
+   {
+      if (asyncExecutor != null)
+      {
+         asyncExecutor.shutdown();
+         asyncExecutor = null;
+         operationExecutor = null;
+      }
+   }
+
+   private void populateChildDescriptions(ManagedResource root, PathAddress address, ManagedResource currentResource, ReadResourceModel readResource)
    {
-      ManagedResource currentResource = root.getSubResource(address);
       Set<String> subResourceNames = currentResource.getSubResourceNames(PathAddress.empty());
       
       // We have children but no sub resources which typically means that the same resource serves multiple paths like a navigation URI.
@@ -151,17 +250,19 @@ public class SimpleManagementController implements ManagementController
       }
       else
       {
-         // Set children descriptions
+         Set<ManagedResource> subResources = Collections.newSetFromMap(new IdentityHashMap<ManagedResource, Boolean>());
          for (String subResourceName : subResourceNames)
          {
-            ManagedResource subResource = currentResource.getSubResource(subResourceName);
-            for (String childName : readResource.getChildren())
+            subResources.add(currentResource.getSubResource(subResourceName));
+         }
+
+         // Set children descriptions, locating each child once
+         for (String childName : readResource.getChildren())
+         {
+            ManagedResource mr = root.getSubResource(address.append(childName));
+            if (mr != null && (mr == currentResource || subResources.contains(mr)))
             {
-               ManagedResource mr = root.getSubResource(address.append(childName));
-               if (mr == subResource || mr == currentResource)
-               {
-                  readResource.setChildDescription(childName, mr.getResourceDescription(PathAddress.empty()).getDescription());
-               }
+               readResource.setChildDescription(childName, mr.getResourceDescription(PathAddress.empty()).getDescription());
             }
          }
       }
@@ -176,4 +277,17 @@ public class SimpleManagementController implements ManagementController
 
       return rootResource;
    }
+
+   private static class AsyncThreadFactory implements ThreadFactory
+   {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable)
+      {
+         Thread thread = new Thread(runnable, "gatein-management-async-" + count.incrementAndGet());
+         thread.setDaemon(true);
+         return thread;
+      }
+   }
 }
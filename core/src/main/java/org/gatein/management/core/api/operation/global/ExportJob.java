@@ -0,0 +1,280 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.operation.global;
+
+import org.gatein.common.io.IOTools;
+import org.gatein.management.api.PathAddress;
+import org.gatein.management.api.operation.model.ExportJobModel;
+import org.gatein.management.api.operation.model.ExportResourceModel;
+import org.gatein.management.api.operation.model.ExportTask;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An export running in the background, spooling its archive to a file which is kept until the job expires.
+ *
+ * @version $Revision$
+ */
+public class ExportJob
+{
+   private final String id;
+   private final PathAddress address;
+   private final File archive;
+   private final AtomicInteger completedTaskCount = new AtomicInteger();
+   private final AtomicLong bytesWritten = new AtomicLong();
+   private volatile int taskCount = -1;
+   private volatile int prunedResourceCount;
+   private volatile ExportJobModel.Status status = ExportJobModel.Status.RUNNING;
+   private volatile String failureDescription;
+   private volatile long finishedAt;
+   private volatile Future<?> future;
+
+   // Guards the archive against being opened or completed once the job was discarded
+   private final Object lock = new Object();
+   private boolean discarded;
+
+   ExportJob(String id, PathAddress address, File archive)
+   {
+      this.id = id;
+      this.address = address;
+      this.archive = archive;
+   }
+
+   public String getId()
+   {
+      return id;
+   }
+
+   public ExportJobModel.Status getStatus()
+   {
+      return status;
+   }
+
+   public ExportJobModel toModel()
+   {
+      return new ExportJobModel(id, address, status, taskCount, completedTaskCount.get(), bytesWritten.get(), prunedResourceCount, failureDescription);
+   }
+
+   /**
+    * Writes the archive of this job, which must be completed.
+    *
+    * @param outputStream stream the archive is written to
+    * @throws IOException if an exception occurs reading or writing the archive
+    */
+   public void writeArchive(OutputStream outputStream) throws IOException
+   {
+      if (status != ExportJobModel.Status.COMPLETED) throw new IOException("Export job " + id + " is not completed.");
+
+      InputStream in = new FileInputStream(archive);
+      try
+      {
+         IOTools.copy(in, outputStream);
+      }
+      finally
+      {
+         IOTools.safeClose(in);
+      }
+   }
+
+   /**
+    * Counts the tasks of the model as they complete.
+    */
+   ExportResourceModel track(final ExportResourceModel model)
+   {
+      if (!model.isStreaming())
+      {
+         taskCount = model.getTasks().size();
+         prunedResourceCount = model.getPrunedResourceCount();
+      }
+
+      final Iterator<ExportTask> tasks = model.getTaskIterator();
+      ExportResourceModel tracked = new ExportResourceModel(new Iterator<ExportTask>()
+      {
+         private int count;
+
+         @Override
+         public boolean hasNext()
+         {
+            boolean hasNext = tasks.hasNext();
+            if (!hasNext)
+            {
+               // Resources are pruned as they are traversed, so the count is only known once all tasks were produced
+               taskCount = count;
+               prunedResourceCount = model.getPrunedResourceCount();
+            }
+
+            return hasNext;
+         }
+
+         @Override
+         public ExportTask next()
+         {
+            final ExportTask task = tasks.next();
+            count++;
+            return new ExportTask()
+            {
+               @Override
+               public String getEntry()
+               {
+                  return task.getEntry();
+               }
+
+               @Override
+               public void export(OutputStream outputStream) throws IOException
+               {
+                  task.export(outputStream);
+                  completedTaskCount.incrementAndGet();
+               }
+            };
+         }
+
+         @Override
+         public void remove()
+         {
+            throw new UnsupportedOperationException();
+         }
+      });
+      tracked.setCompressionLevel(model.getCompressionLevel());
+      tracked.setManifest(model.isManifest());
+      tracked.setPreviousManifest(model.getPreviousManifest());
+      tracked.setDeterministic(model.isDeterministic());
+
+      return tracked;
+   }
+
+   /**
+    * Counts the bytes written to the archive.
+    */
+   OutputStream track(OutputStream outputStream)
+   {
+      return new FilterOutputStream(outputStream)
+      {
+         @Override
+         public void write(int b) throws IOException
+         {
+            out.write(b);
+            bytesWritten.incrementAndGet();
+         }
+
+         @Override
+         public void write(byte[] b, int off, int len) throws IOException
+         {
+            out.write(b, off, len);
+            bytesWritten.addAndGet(len);
+         }
+      };
+   }
+
+   File getArchive()
+   {
+      return archive;
+   }
+
+   /**
+    * Opens the archive to write it, unless the job was discarded.
+    *
+    * @return stream writing the archive, or null if the job was discarded
+    * @throws IOException if the archive could not be opened
+    */
+   OutputStream openArchive() throws IOException
+   {
+      synchronized (lock)
+      {
+         if (discarded) return null;
+
+         return track(new FileOutputStream(archive));
+      }
+   }
+
+   void setFuture(Future<?> future)
+   {
+      this.future = future;
+   }
+
+   /**
+    * Marks the job completed, unless it was discarded while its archive was written.
+    *
+    * @return whether the job completed, its archive being deleted otherwise
+    */
+   boolean completed()
+   {
+      synchronized (lock)
+      {
+         if (discarded)
+         {
+            deleteArchive();
+            return false;
+         }
+
+         status = ExportJobModel.Status.COMPLETED;
+         finishedAt = System.currentTimeMillis();
+         return true;
+      }
+   }
+
+   void failed(String failureDescription)
+   {
+      this.failureDescription = failureDescription;
+      status = ExportJobModel.Status.FAILED;
+      finishedAt = System.currentTimeMillis();
+   }
+
+   boolean isExpired(long now, long retention)
+   {
+      return status != ExportJobModel.Status.RUNNING && now - finishedAt > retention;
+   }
+
+   /**
+    * Cancels the job if still running, and deletes its archive.
+    */
+   void discard()
+   {
+      synchronized (lock)
+      {
+         discarded = true;
+      }
+
+      Future<?> f = future;
+      if (f != null) f.cancel(true);
+
+      deleteArchive();
+   }
+
+   void deleteArchive()
+   {
+      if (archive.exists() && !archive.delete())
+      {
+         archive.deleteOnExit();
+      }
+   }
+}
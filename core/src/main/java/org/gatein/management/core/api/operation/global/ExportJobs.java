@@ -0,0 +1,386 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.operation.global;
+
+import org.gatein.common.io.IOTools;
+import org.gatein.common.logging.Logger;
+import org.gatein.common.logging.LoggerFactory;
+import org.gatein.management.api.ContentType;
+import org.gatein.management.api.ManagedDescription;
+import org.gatein.management.api.ManagedResource;
+import org.gatein.management.api.binding.Marshaller;
+import org.gatein.management.api.exceptions.OperationException;
+import org.gatein.management.api.exceptions.ResourceNotFoundException;
+import org.gatein.management.api.operation.OperationContext;
+import org.gatein.management.api.operation.OperationHandler;
+import org.gatein.management.api.operation.OperationNames;
+import org.gatein.management.api.operation.QueryOperationHandler;
+import org.gatein.management.api.operation.ResultHandler;
+import org.gatein.management.api.operation.model.ExportJobModel;
+import org.gatein.management.api.operation.model.ExportResourceModel;
+import org.gatein.management.api.operation.model.NoResultModel;
+import org.gatein.management.api.operation.model.ReadResourceModel;
+import org.gatein.management.core.api.operation.BasicResultHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs exports in the background, so a client submitting an export with the 'async' attribute gets the id of the job
+ * right away instead of holding its request until the archive is written. Jobs are exposed as managed resources under
+ * {@link ExportJobModel#RESOURCE_NAME}: reading a job describes its progress, exporting it downloads its archive and removing it
+ * discards its archive. Finished jobs expire after the retention period.
+ * <p/>
+ * Export handlers run on a job thread with the operation context of the submitting request, so the management service
+ * only runs export jobs when {@link org.gatein.management.core.api.ManagementServiceImpl#EXPORT_JOBS_PROPERTY} is set.
+ *
+ * @version $Revision$
+ */
+public class ExportJobs
+{
+   private static final Logger log = LoggerFactory.getLogger(ExportJobs.class);
+
+   private final ExecutorService executor;
+   private final long retention;
+   private final Map<String, ExportJob> jobs = new LinkedHashMap<String, ExportJob>();
+
+   /**
+    * @param executor the executor running export jobs
+    * @param retention time in milliseconds a finished job is kept
+    */
+   public ExportJobs(ExecutorService executor, long retention)
+   {
+      if (executor == null) throw new IllegalArgumentException("executor is null");
+
+      this.executor = executor;
+      this.retention = retention;
+   }
+
+   /**
+    * Registers the managed resources of export jobs.
+    *
+    * @param registration registration of the root resource
+    */
+   public void registerResources(ManagedResource.Registration registration)
+   {
+      ManagedResource.Registration jobsRegistration = registration.registerSubResource(ExportJobModel.RESOURCE_NAME, description("Exports running in the background or waiting for their archive to be downloaded."));
+      jobsRegistration.registerOperationHandler(OperationNames.READ_RESOURCE, new ReadJobs(), description("Lists the export jobs."));
+
+      ManagedResource.Registration jobRegistration = jobsRegistration.registerSubResource("{job-id}", description("Export job."));
+      jobRegistration.registerOperationHandler(OperationNames.READ_RESOURCE, new ReadJob(), description("Describes the progress of the export job."));
+      jobRegistration.registerOperationHandler(OperationNames.READ_STATUS, new ReadStatus(), description("Status of the export job, including the number of export tasks completed and of bytes written."));
+      jobRegistration.registerOperationHandler(OperationNames.EXPORT_RESOURCE, new DownloadJob(), description("Downloads the archive of the completed export job."));
+      jobRegistration.registerOperationHandler(OperationNames.REMOVE_RESOURCE, new RemoveJob(), description("Cancels the export job if still running, and discards its archive."));
+   }
+
+   /**
+    * Wraps an export operation handler so exports with the 'async' attribute set to true run as export jobs.
+    *
+    * @param exportHandler the export operation handler
+    * @return operation handler submitting export jobs
+    */
+   public OperationHandler asyncExportHandler(OperationHandler exportHandler)
+   {
+      return new AsyncExportHandler(exportHandler);
+   }
+
+   ExportJob submit(final OperationContext operationContext, final OperationHandler exportHandler) throws OperationException
+   {
+      purge();
+
+      File archive;
+      try
+      {
+         archive = File.createTempFile("gatein-export-job", ".zip");
+      }
+      catch (IOException e)
+      {
+         throw new OperationException(operationContext.getOperationName(), "Could not create file for archive of export job.", e);
+      }
+
+      final ExportJob job = new ExportJob(UUID.randomUUID().toString(), operationContext.getAddress(), archive);
+      synchronized (jobs)
+      {
+         jobs.put(job.getId(), job);
+      }
+
+      try
+      {
+         job.setFuture(executor.submit(new Runnable()
+         {
+            @Override
+            public void run()
+            {
+               ExportJobs.this.run(job, operationContext, exportHandler);
+            }
+         }));
+      }
+      catch (RejectedExecutionException e)
+      {
+         remove(job.getId());
+         throw new OperationException(operationContext.getOperationName(), "Too many export jobs, try again later.", e);
+      }
+
+      log.debug("Submitted export job " + job.getId() + " for address " + operationContext.getAddress());
+
+      return job;
+   }
+
+   private void run(ExportJob job, OperationContext operationContext, OperationHandler exportHandler)
+   {
+      OutputStream outputStream = null;
+      try
+      {
+         BasicResultHandler resultHandler = new BasicResultHandler();
+         exportHandler.execute(operationContext, resultHandler);
+         if (resultHandler.getFailureDescription() != null)
+         {
+            job.failed(resultHandler.getFailureDescription());
+            return;
+         }
+
+         ExportResourceModel model = job.track((ExportResourceModel) resultHandler.getResult());
+         Marshaller<ExportResourceModel> marshaller = operationContext.getBindingProvider().getMarshaller(ExportResourceModel.class, ContentType.ZIP);
+         if (marshaller == null)
+         {
+            job.failed("Could not find marshaller for export of address " + operationContext.getAddress());
+            return;
+         }
+
+         outputStream = job.openArchive();
+         if (outputStream == null)
+         {
+            job.failed("Export job was removed.");
+            return;
+         }
+
+         marshaller.marshal(model, outputStream);
+         outputStream.close();
+         outputStream = null;
+
+         if (!job.completed())
+         {
+            job.failed("Export job was removed.");
+         }
+      }
+      catch (Throwable t)
+      {
+         log.error("Export job " + job.getId() + " for address " + operationContext.getAddress() + " failed.", t);
+         job.failed((t.getMessage() == null) ? t.toString() : t.getMessage());
+      }
+      finally
+      {
+         IOTools.safeClose(outputStream);
+         if (job.getStatus() != ExportJobModel.Status.COMPLETED)
+         {
+            job.deleteArchive();
+         }
+      }
+   }
+
+   ExportJob getJob(String id)
+   {
+      purge();
+      synchronized (jobs)
+      {
+         return jobs.get(id);
+      }
+   }
+
+   ExportJob remove(String id)
+   {
+      ExportJob job;
+      synchronized (jobs)
+      {
+         job = jobs.remove(id);
+      }
+
+      if (job != null) job.discard();
+
+      return job;
+   }
+
+   /**
+    * Cancels running jobs and discards the archives of all jobs.
+    */
+   public void shutdown()
+   {
+      executor.shutdownNow();
+
+      List<ExportJob> discarded;
+      synchronized (jobs)
+      {
+         discarded = new ArrayList<ExportJob>(jobs.values());
+         jobs.clear();
+      }
+
+      for (ExportJob job : discarded)
+      {
+         job.discard();
+      }
+   }
+
+   private void purge()
+   {
+      long now = System.currentTimeMillis();
+      List<ExportJob> expired = new ArrayList<ExportJob>();
+      synchronized (jobs)
+      {
+         for (Iterator<ExportJob> it = jobs.values().iterator(); it.hasNext();)
+         {
+            ExportJob job = it.next();
+            if (job.isExpired(now, retention))
+            {
+               it.remove();
+               expired.add(job);
+            }
+         }
+      }
+
+      for (ExportJob job : expired)
+      {
+         log.debug("Discarding expired export job " + job.getId());
+         job.discard();
+      }
+   }
+
+   private ExportJob getJob(OperationContext operationContext) throws ResourceNotFoundException
+   {
+      String id = operationContext.getAddress().getLastElement();
+      ExportJob job = getJob(id);
+      if (job == null) throw new ResourceNotFoundException("No export job " + id);
+
+      return job;
+   }
+
+   private static ManagedDescription description(final String description)
+   {
+      return new ManagedDescription()
+      {
+         @Override
+         public String getDescription()
+         {
+            return description;
+         }
+      };
+   }
+
+   class AsyncExportHandler implements OperationHandler
+   {
+      final OperationHandler exportHandler;
+
+      private AsyncExportHandler(OperationHandler exportHandler)
+      {
+         this.exportHandler = exportHandler;
+      }
+
+      @Override
+      public void execute(OperationContext operationContext, ResultHandler resultHandler) throws ResourceNotFoundException, OperationException
+      {
+         if (Boolean.parseBoolean(operationContext.getAttributes().getValue("async")))
+         {
+            resultHandler.completed(submit(operationContext, exportHandler).toModel());
+         }
+         else
+         {
+            exportHandler.execute(operationContext, resultHandler);
+         }
+      }
+   }
+
+   private class ReadJobs extends QueryOperationHandler<ReadResourceModel>
+   {
+      @Override
+      protected ReadResourceModel execute(OperationContext operationContext)
+      {
+         purge();
+         synchronized (jobs)
+         {
+            return new ReadResourceModel("Export jobs.", new LinkedHashSet<String>(jobs.keySet()));
+         }
+      }
+   }
+
+   private class ReadJob extends QueryOperationHandler<ReadResourceModel>
+   {
+      @Override
+      protected ReadResourceModel execute(OperationContext operationContext) throws ResourceNotFoundException
+      {
+         return new ReadResourceModel(getJob(operationContext).toModel().toString(), Collections.<String>emptySet());
+      }
+   }
+
+   private class ReadStatus extends QueryOperationHandler<ExportJobModel>
+   {
+      @Override
+      protected ExportJobModel execute(OperationContext operationContext) throws ResourceNotFoundException
+      {
+         return getJob(operationContext).toModel();
+      }
+   }
+
+   private class DownloadJob extends QueryOperationHandler<ExportJob>
+   {
+      @Override
+      protected ExportJob execute(OperationContext operationContext) throws ResourceNotFoundException, OperationException
+      {
+         ExportJob job = getJob(operationContext);
+         ExportJobModel model = job.toModel();
+         if (model.getStatus() == ExportJobModel.Status.RUNNING)
+         {
+            throw new OperationException(operationContext.getOperationName(), "Export job " + job.getId() + " is still running.");
+         }
+         else if (model.getStatus() == ExportJobModel.Status.FAILED)
+         {
+            throw new OperationException(operationContext.getOperationName(), "Export job " + job.getId() + " failed: " + model.getFailureDescription());
+         }
+
+         return job;
+      }
+   }
+
+   private class RemoveJob extends QueryOperationHandler<NoResultModel>
+   {
+      @Override
+      protected NoResultModel execute(OperationContext operationContext) throws ResourceNotFoundException
+      {
+         if (remove(operationContext.getAddress().getLastElement()) == null)
+         {
+            throw new ResourceNotFoundException("No export job " + operationContext.getAddress().getLastElement());
+         }
+
+         return NoResultModel.INSTANCE;
+      }
+   }
+}
@@ -22,10 +22,13 @@
 
 package org.gatein.management.core.api.operation.global;
 
+import org.gatein.common.logging.Logger;
+import org.gatein.common.logging.LoggerFactory;
 import org.gatein.management.api.ManagedDescription;
 import org.gatein.management.api.ManagedResource;
 import org.gatein.management.api.PathAddress;
 import org.gatein.management.api.PathTemplateFilter;
+import org.gatein.management.api.ResolvableManagedResource;
 import org.gatein.management.api.exceptions.OperationException;
 import org.gatein.management.api.exceptions.ResourceNotFoundException;
 import org.gatein.management.api.operation.OperationContext;
@@ -33,15 +36,31 @@ import org.gatein.management.api.operation.OperationContextDelegate;
 import org.gatein.management.api.operation.OperationHandler;
 import org.gatein.management.api.operation.OperationNames;
 import org.gatein.management.api.operation.QueryOperationHandler;
+import org.gatein.management.api.operation.ResultSink;
 import org.gatein.management.api.operation.StepResultHandler;
+import org.gatein.management.api.operation.model.ExportManifest;
 import org.gatein.management.api.operation.model.ExportResourceModel;
 import org.gatein.management.api.operation.model.ExportTask;
 import org.gatein.management.api.operation.model.ReadResourceModel;
+import org.gatein.management.core.api.AbstractManagedResource;
+import org.gatein.management.core.api.binding.zip.ExportManifestCache;
 import org.gatein.management.core.api.operation.BasicResultHandler;
 
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -49,6 +68,45 @@ import java.util.List;
  */
 public class ExportResource extends QueryOperationHandler<ExportResourceModel>
 {
+   private static final Logger log = LoggerFactory.getLogger(ExportResource.class);
+
+   private final ExecutorService executor;
+   private final int parallelism;
+   private final ExportManifestCache manifestCache;
+
+   public ExportResource()
+   {
+      this(null, 0, null);
+   }
+
+   /**
+    * Creates an export operation handler which traverses sibling resources concurrently. Each export hands at most
+    * {@code parallelism} branches to the executor at any time, so it must be able to run that many tasks at once for
+    * every export running, as a cached thread pool does. Other branches are traversed by the thread visiting their
+    * parent.
+    *
+    * @param executor the executor traversing branches, or null to traverse resources one after another
+    * @param parallelism the maximum number of branches of an export handed to the executor at any time
+    */
+   public ExportResource(ExecutorService executor, int parallelism)
+   {
+      this(executor, parallelism, null);
+   }
+
+   /**
+    * @param executor the executor traversing branches, or null to traverse resources one after another
+    * @param parallelism the maximum number of branches of an export handed to the executor at any time
+    * @param manifestCache cache of recent manifests, looked up by the token of the 'since' attribute, or null
+    */
+   public ExportResource(ExecutorService executor, int parallelism, ExportManifestCache manifestCache)
+   {
+      if (executor != null && parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+
+      this.executor = executor;
+      this.parallelism = parallelism;
+      this.manifestCache = manifestCache;
+   }
+
    @Override
    protected ExportResourceModel execute(OperationContext operationContext) throws ResourceNotFoundException, OperationException
    {
@@ -56,33 +114,119 @@ public class ExportResource extends QueryOperationHandler<ExportResourceModel>
       final PathAddress address = operationContext.getAddress();
       final String operationName = operationContext.getOperationName();
 
-      StepResultHandler<ExportResourceModel> exportResultHandler = new StepResultHandler<ExportResourceModel>(address)
+      PathTemplateFilter filter;
+      try
       {
-         @Override
-         public void failed(String failureDescription)
+         filter = PathTemplateFilter.parse(operationContext.getAttributes().getValues("filter"));
+      }
+      catch (ParseException e)
+      {
+         throw new OperationException(operationName, "Could not parse filter attributes.", e);
+      }
+
+      int compressionLevel = getCompressionLevel(operationContext.getAttributes().getValue("compression"), operationName);
+      ExportManifest previousManifest = getPreviousManifest(operationContext, operationName);
+
+      boolean deterministic = Boolean.parseBoolean(operationContext.getAttributes().getValue("deterministic"));
+      // Permits of this export only, so concurrent exports don't take branches from each other
+      Semaphore branchPermits = (executor == null) ? null : new Semaphore(parallelism);
+      Traversal traversal = new Traversal(resource, address, operationName, filter, deterministic, branchPermits);
+      ExportResourceModel model;
+      if (executor == null)
+      {
+         TaskIterator tasks = new TaskIterator(traversal, operationContext);
+         model = new ExportResourceModel(tasks);
+         tasks.model = model;
+
+         // Traverses up to the first task, so failures to export the resource itself are reported by this operation
+         tasks.hasNext();
+      }
+      else
+      {
+         model = new ExportResourceModel(executeAll(traversal, operationContext));
+         model.setPrunedResourceCount(traversal.pruned.get());
+      }
+
+      model.setCompressionLevel(compressionLevel);
+      model.setManifest(Boolean.parseBoolean(operationContext.getAttributes().getValue("manifest")));
+      model.setPreviousManifest(previousManifest);
+      model.setDeterministic(deterministic);
+      return model;
+   }
+
+   /**
+    * Resolves the manifest an incremental export is relative to, given either as the token of a recent export
+    * ('since') or as the content of its manifest ('previous-manifest').
+    */
+   private ExportManifest getPreviousManifest(OperationContext operationContext, String operationName)
+   {
+      String manifest = operationContext.getAttributes().getValue("previous-manifest");
+      if (manifest != null)
+      {
+         try
          {
-            if (address.equals(getCurrentAddress()))
-            {
-               throw new OperationException(operationName, "Export operation failed. Reason: " + failureDescription);
-            }
-            else
-            {
-               throw new OperationException(operationName, "Export operation failed. Reason: " + failureDescription + " [Step Address: " + getCurrentAddress() + "]");
-            }
+            return ExportManifest.parse(manifest);
          }
-      };
+         catch (ParseException e)
+         {
+            throw new OperationException(operationName, "Could not parse previous-manifest attribute.", e);
+         }
+      }
+
+      String token = operationContext.getAttributes().getValue("since");
+      if (token == null) return null;
+
+      ExportManifest previous = (manifestCache == null) ? null : manifestCache.get(token);
+      if (previous == null)
+      {
+         // A full export with a manifest is always a valid answer to an incremental export
+         log.warn("No recent export with manifest token " + token + ", exporting all resources at " + operationContext.getAddress());
+         return new ExportManifest();
+      }
+
+      return previous;
+   }
+
+   /**
+    * Parses the compression attribute, which is either a deflate level from 0 to 9 or 'stored'.
+    */
+   private static int getCompressionLevel(String compression, String operationName)
+   {
+      if (compression == null) return ExportResourceModel.DEFAULT_COMPRESSION;
+      if (compression.equals("stored")) return ExportResourceModel.STORED;
+
+      if (compression.length() == 1 && compression.charAt(0) >= '0' && compression.charAt(0) <= '9')
+      {
+         return compression.charAt(0) - '0';
+      }
+
+      throw new OperationException(operationName, "Invalid compression '" + compression + "'. Valid values are 0 to 9 and stored.");
+   }
 
+   /**
+    * Traverses all resources, branches being traversed concurrently, and returns the export tasks once all completed.
+    */
+   private List<ExportTask> executeAll(Traversal traversal, OperationContext operationContext)
+   {
+      PathAddress address = traversal.originalAddress;
+      StepResultHandler<ExportResourceModel> exportResultHandler = createResultHandler(address, traversal.operationName, address, null);
       try
       {
-         executeHandlers(resource, operationContext, address, operationName, exportResultHandler);
+         executeHandlers(traversal, operationContext, address, exportResultHandler);
+      }
+      catch (StepException e)
+      {
+         Throwable cause = e.getCause();
+         String causeOperationName = (cause instanceof OperationException) ? ((OperationException) cause).getOperationName() : traversal.operationName;
+         throw new OperationException(causeOperationName, getStepMessage(cause, address, e.stepAddress), cause);
       }
       catch (OperationException e)
       {
-         throw new OperationException(e.getOperationName(), getStepMessage(e, address, exportResultHandler), e);
+         throw new OperationException(e.getOperationName(), getStepMessage(e, address, exportResultHandler.getCurrentAddress()), e);
       }
       catch (Throwable t)
       {
-         throw new OperationException(operationName, getStepMessage(t, address, exportResultHandler), t);
+         throw new OperationException(traversal.operationName, getStepMessage(t, address, exportResultHandler.getCurrentAddress()), t);
       }
 
       List<ExportTask> tasks = new ArrayList<ExportTask>();
@@ -90,39 +234,53 @@ public class ExportResource extends QueryOperationHandler<ExportResourceModel>
       {
          tasks.addAll(model.getTasks());
       }
-      return new ExportResourceModel(tasks);
+
+      traversal.completed();
+      return tasks;
    }
 
-   private void executeHandlers(ManagedResource resource, final OperationContext operationContext, PathAddress address, String operationName, StepResultHandler<ExportResourceModel> stepResultHandler)
+   private void executeHandlers(Traversal traversal, OperationContext operationContext, PathAddress address, StepResultHandler<ExportResourceModel> stepResultHandler)
    {
-      OperationHandler handler = resource.getOperationHandler(address, operationName);
-      if (handler != null && handler != this)
+      Collection<String> children = executeStep(traversal, operationContext, address, stepResultHandler);
+      if (children != null)
       {
-         List<String> filterAttributes = operationContext.getAttributes().getValues("filter");
-         PathTemplateFilter filter;
-         try
-         {
-            filter = PathTemplateFilter.parse(filterAttributes);
-         }
-         catch (ParseException e)
-         {
-            throw new OperationException(operationName, "Could not parse filter attributes.", e);
-         }
+         executeBranches(traversal, operationContext, address, children, stepResultHandler);
+      }
+   }
+
+   /**
+    * Executes the export operation handler of the resource at the address, if any.
+    *
+    * @return the children to traverse, or null if the resource has an export operation handler or none of its
+    * children can be exported
+    */
+   private Collection<String> executeStep(Traversal traversal, OperationContext operationContext, PathAddress address, StepResultHandler<ExportResourceModel> stepResultHandler)
+   {
+      String operationName = traversal.operationName;
+      ResolvableManagedResource.Resolution resolution = AbstractManagedResource.resolve(traversal.resource, address, operationName);
+      if (resolution == null)
+      {
+         throw new OperationException(operationName, "Could not locate resource at address " + address);
+      }
 
-         if (address.accepts(filter))
+      OperationHandler handler = resolution.getOperationHandler();
+      if (handler != null && !isSelf(handler))
+      {
+         if (address.accepts(traversal.filter))
          {
             handler.execute(operationContext, stepResultHandler);
          }
+         return null;
+      }
+      else if (traversal.filter.rejectsAll(address))
+      {
+         // Path templates bound so far already rule out every export below this resource
+         traversal.pruned.incrementAndGet();
+         return null;
       }
       else
       {
-         ManagedResource found = resource.getSubResource(address);
-         if (found == null)
-         {
-            throw new OperationException(operationName, "Could not locate resource at address " + address);
-         }
-         
-         OperationHandler readResource = resource.getOperationHandler(address, OperationNames.READ_RESOURCE);
+         OperationHandler readResource = resolution.getOperationHandler(OperationNames.READ_RESOURCE);
          BasicResultHandler readResourceResult = new BasicResultHandler();
          readResource.execute(operationContext, readResourceResult);
          if (readResourceResult.getFailureDescription() != null)
@@ -136,33 +294,343 @@ public class ExportResource extends QueryOperationHandler<ExportResourceModel>
             throw new RuntimeException("Was expecting " + ReadResourceModel.class + " to be returned for operation " + OperationNames.READ_RESOURCE + " at address " + address);
          }
 
-         for (String child : ((ReadResourceModel) model).getChildren())
+         Collection<String> children = ((ReadResourceModel) model).getChildren();
+         if (traversal.deterministic)
+         {
+            // Children are typically listed in hash order, which may differ from one export to another
+            List<String> sorted = new ArrayList<String>(children);
+            Collections.sort(sorted);
+            children = sorted;
+         }
+
+         return children;
+      }
+   }
+
+   /**
+    * Traverses each child as a branch with its own result handler, handing branches to the executor while permits are
+    * available. Results are merged in the order of the children once all branches completed.
+    */
+   private void executeBranches(Traversal traversal, OperationContext operationContext, PathAddress address, Collection<String> children, StepResultHandler<ExportResourceModel> stepResultHandler)
+   {
+      List<Branch> branches = new ArrayList<Branch>(children.size());
+      boolean completed = false;
+      try
+      {
+         for (String child : children)
+         {
+            PathAddress childAddress = address.append(child);
+            final Branch branch = new Branch(traversal, childContext(operationContext, childAddress), childAddress);
+            branches.add(branch);
+
+            final Semaphore branchPermits = traversal.branchPermits;
+            if (branchPermits.tryAcquire())
+            {
+               try
+               {
+                  branch.future = executor.submit(new Callable<Void>()
+                  {
+                     @Override
+                     public Void call() throws Exception
+                     {
+                        try
+                        {
+                           return branch.call();
+                        }
+                        finally
+                        {
+                           branchPermits.release();
+                        }
+                     }
+                  });
+               }
+               catch (RejectedExecutionException e)
+               {
+                  branchPermits.release();
+               }
+            }
+
+            if (branch.future == null)
+            {
+               branch.call();
+            }
+         }
+
+         for (Branch branch : branches)
          {
-            final PathAddress childAddress = address.append(child);
-            OperationContext childContext = new OperationContextDelegate(operationContext)
+            if (branch.future != null)
             {
-               @Override
-               public PathAddress getAddress()
+               try
+               {
+                  branch.future.get();
+               }
+               catch (ExecutionException e)
                {
-                  return childAddress;
+                  Throwable cause = e.getCause();
+                  if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                  if (cause instanceof Error) throw (Error) cause;
+                  throw new StepException(branch.address, cause);
                }
-            };
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+                  throw new OperationException(traversal.operationName, "Interrupted waiting for export of " + branch.address);
+               }
+            }
 
-            executeHandlers(resource, childContext, childAddress, operationName, stepResultHandler.next(childAddress));
+            for (ExportResourceModel result : branch.resultHandler.getResults())
+            {
+               stepResultHandler.completed(result);
+            }
+         }
+         completed = true;
+      }
+      finally
+      {
+         if (!completed)
+         {
+            for (Branch branch : branches)
+            {
+               if (branch.future != null) branch.future.cancel(true);
+            }
          }
       }
    }
 
-   private String getStepMessage(Throwable t, PathAddress originalAddress, StepResultHandler<ExportResourceModel> stepResultHandler)
+   /**
+    * Whether the handler is this export operation handler, possibly wrapped to run exports as jobs.
+    */
+   private boolean isSelf(OperationHandler handler)
+   {
+      if (handler instanceof ExportJobs.AsyncExportHandler)
+      {
+         handler = ((ExportJobs.AsyncExportHandler) handler).exportHandler;
+      }
+
+      return handler == this;
+   }
+
+   private StepResultHandler<ExportResourceModel> createResultHandler(final PathAddress originalAddress, final String operationName, PathAddress address, ResultSink<ExportResourceModel> sink)
+   {
+      return new StepResultHandler<ExportResourceModel>(address, sink)
+      {
+         @Override
+         public void failed(String failureDescription)
+         {
+            if (originalAddress.equals(getCurrentAddress()))
+            {
+               throw new OperationException(operationName, "Export operation failed. Reason: " + failureDescription);
+            }
+            else
+            {
+               throw new OperationException(operationName, "Export operation failed. Reason: " + failureDescription + " [Step Address: " + getCurrentAddress() + "]");
+            }
+         }
+      };
+   }
+
+   private static OperationContext childContext(OperationContext operationContext, final PathAddress childAddress)
+   {
+      return new OperationContextDelegate(operationContext)
+      {
+         @Override
+         public PathAddress getAddress()
+         {
+            return childAddress;
+         }
+      };
+   }
+
+   private String getStepMessage(Throwable t, PathAddress originalAddress, PathAddress stepAddress)
    {
       String message = (t.getMessage() == null) ? "Step operation failure" : t.getMessage();
-      if (originalAddress.equals(stepResultHandler.getCurrentAddress()))
+      if (originalAddress.equals(stepAddress))
       {
          return message;
       }
       else
       {
-         return message + " [Step Address: " + stepResultHandler.getCurrentAddress() + "]";
+         return message + " [Step Address: " + stepAddress + "]";
+      }
+   }
+
+   private static class Traversal
+   {
+      private final ManagedResource resource;
+      private final PathAddress originalAddress;
+      private final String operationName;
+      private final PathTemplateFilter filter;
+      private final boolean deterministic;
+      private final Semaphore branchPermits;
+      private final AtomicInteger pruned = new AtomicInteger();
+
+      private Traversal(ManagedResource resource, PathAddress originalAddress, String operationName, PathTemplateFilter filter, boolean deterministic, Semaphore branchPermits)
+      {
+         this.resource = resource;
+         this.originalAddress = originalAddress;
+         this.operationName = operationName;
+         this.filter = filter;
+         this.deterministic = deterministic;
+         this.branchPermits = branchPermits;
+      }
+
+      private void completed()
+      {
+         if (log.isDebugEnabled())
+         {
+            log.debug("Export at address " + originalAddress + " pruned " + pruned.get() + " resource(s) rejected by filter " + filter);
+         }
+      }
+   }
+
+   /**
+    * Traverses resources depth first as export tasks are pulled, so tasks are written to the archive as soon as they
+    * are produced. The traversal only runs ahead of the archive by the tasks of one resource, and the tasks written are
+    * not referenced anymore.
+    */
+   private class TaskIterator implements Iterator<ExportTask>
+   {
+      private final Traversal traversal;
+      private final LinkedList<Step> steps = new LinkedList<Step>();
+      private final LinkedList<ExportTask> tasks = new LinkedList<ExportTask>();
+      private final StepResultHandler<ExportResourceModel> resultHandler;
+      private ExportResourceModel model;
+
+      private TaskIterator(Traversal traversal, OperationContext operationContext)
+      {
+         this.traversal = traversal;
+         this.resultHandler = createResultHandler(traversal.originalAddress, traversal.operationName, traversal.originalAddress, new ResultSink<ExportResourceModel>()
+         {
+            @Override
+            public void accept(ExportResourceModel result)
+            {
+               Iterator<ExportTask> iterator = result.getTaskIterator();
+               while (iterator.hasNext())
+               {
+                  tasks.add(iterator.next());
+               }
+            }
+         });
+         steps.add(new Step(operationContext, traversal.originalAddress));
+      }
+
+      @Override
+      public boolean hasNext()
+      {
+         while (tasks.isEmpty() && !steps.isEmpty())
+         {
+            Step step = steps.removeFirst();
+            Collection<String> children;
+            try
+            {
+               children = executeStep(traversal, step.operationContext, step.address, resultHandler.next(step.address));
+            }
+            catch (OperationException e)
+            {
+               steps.clear();
+               throw new OperationException(e.getOperationName(), getStepMessage(e, traversal.originalAddress, step.address), e);
+            }
+            catch (RuntimeException e)
+            {
+               steps.clear();
+               throw new OperationException(traversal.operationName, getStepMessage(e, traversal.originalAddress, step.address), e);
+            }
+
+            if (children != null)
+            {
+               // Children are traversed before the siblings of this resource, in order
+               int index = 0;
+               for (String child : children)
+               {
+                  PathAddress childAddress = step.address.append(child);
+                  steps.add(index++, new Step(childContext(step.operationContext, childAddress), childAddress));
+               }
+            }
+
+            if (steps.isEmpty())
+            {
+               model.setPrunedResourceCount(traversal.pruned.get());
+               traversal.completed();
+            }
+         }
+
+         return !tasks.isEmpty();
+      }
+
+      @Override
+      public ExportTask next()
+      {
+         if (!hasNext()) throw new NoSuchElementException();
+
+         return tasks.removeFirst();
+      }
+
+      @Override
+      public void remove()
+      {
+         throw new UnsupportedOperationException();
+      }
+   }
+
+   private static class Step
+   {
+      private final OperationContext operationContext;
+      private final PathAddress address;
+
+      private Step(OperationContext operationContext, PathAddress address)
+      {
+         this.operationContext = operationContext;
+         this.address = address;
+      }
+   }
+
+   private class Branch implements Callable<Void>
+   {
+      private final Traversal traversal;
+      private final OperationContext operationContext;
+      private final PathAddress address;
+      private final StepResultHandler<ExportResourceModel> resultHandler;
+      private Future<Void> future;
+
+      private Branch(Traversal traversal, OperationContext operationContext, PathAddress address)
+      {
+         this.traversal = traversal;
+         this.operationContext = operationContext;
+         this.address = address;
+         this.resultHandler = createResultHandler(traversal.originalAddress, traversal.operationName, address, null);
+      }
+
+      @Override
+      public Void call()
+      {
+         try
+         {
+            executeHandlers(traversal, operationContext, address, resultHandler);
+         }
+         catch (StepException e)
+         {
+            throw e;
+         }
+         catch (Throwable t)
+         {
+            throw new StepException(resultHandler.getCurrentAddress(), t);
+         }
+
+         return null;
+      }
+   }
+
+   /**
+    * Failure of a branch, keeping the address of the step that failed.
+    */
+   private static class StepException extends RuntimeException
+   {
+      private final PathAddress stepAddress;
+
+      private StepException(PathAddress stepAddress, Throwable cause)
+      {
+         super(cause);
+         this.stepAddress = stepAddress;
       }
    }
 
@@ -25,10 +25,13 @@ package org.gatein.management.core.api.operation.global;
 import org.gatein.management.api.ManagedDescription;
 import org.gatein.management.api.ManagedResource;
 import org.gatein.management.api.PathAddress;
+import org.gatein.management.api.ResolvableManagedResource;
+import org.gatein.management.api.exceptions.ResourceNotFoundException;
 import org.gatein.management.api.operation.OperationContext;
 import org.gatein.management.api.operation.QueryOperationHandler;
 import org.gatein.management.api.operation.model.NamedDescription;
 import org.gatein.management.api.operation.model.ReadResourceModel;
+import org.gatein.management.core.api.AbstractManagedResource;
 
 import java.util.Map;
 import java.util.Set;
@@ -50,21 +53,26 @@ public class GlobalOperationHandlers
       @Override
       public ReadResourceModel execute(OperationContext operationContext)
       {
-         ManagedResource resource = operationContext.getManagedResource();
          PathAddress address = operationContext.getAddress();
+         ResolvableManagedResource.Resolution resolution = AbstractManagedResource.resolve(operationContext.getManagedResource(), address, operationContext.getOperationName());
+         if (resolution == null)
+         {
+            throw new ResourceNotFoundException("Could not locate managed resource for address '" + address + "'");
+         }
 
-         Set<String> children = resource.getSubResourceNames(address);
+         ManagedResource resource = resolution.getResource();
+         Set<String> children = resource.getSubResourceNames(PathAddress.empty());
          ReadResourceModel readResourceModel = new ReadResourceModel("Available operations and children (sub-resources).", children);
 
          // Set children descriptions
          for (String child : children)
          {
-            ManagedDescription desc = resource.getResourceDescription(address.append(child));
+            ManagedDescription desc = resource.getSubResource(child).getResourceDescription(PathAddress.empty());
             readResourceModel.setChildDescription(child, desc.getDescription());
          }
 
          // Set operation descriptions
-         Map<String, ManagedDescription> descriptions = resource.getOperationDescriptions(address);
+         Map<String, ManagedDescription> descriptions = resolution.getOperationDescriptions();
          for (Map.Entry<String, ManagedDescription> desc : descriptions.entrySet())
          {
             readResourceModel.addOperation(new NamedDescription(desc.getKey(), desc.getValue().getDescription()));
@@ -26,6 +26,7 @@ import org.gatein.management.api.ComponentRegistration;
 import org.gatein.management.api.ManagedDescription;
 import org.gatein.management.api.ManagedResource;
 import org.gatein.management.api.binding.BindingProvider;
+import org.gatein.management.api.operation.OperationHandler;
 import org.gatein.management.api.operation.OperationNames;
 import org.gatein.management.core.api.operation.global.ExportResource;
 import org.gatein.management.core.api.operation.global.GlobalOperationHandlers;
@@ -41,11 +42,18 @@ public class ExtensionContextImpl implements ExtensionContext
 {
    private final ManagedResource.Registration rootRegistration;
    private final Map<String, BindingProvider> bindingProviders;
+   private final OperationHandler exportResource;
 
    public ExtensionContextImpl(ManagedResource.Registration rootRegistration, Map<String, BindingProvider> bindingProviders)
+   {
+      this(rootRegistration, bindingProviders, GlobalOperationHandlers.EXPORT_RESOURCE);
+   }
+
+   public ExtensionContextImpl(ManagedResource.Registration rootRegistration, Map<String, BindingProvider> bindingProviders, OperationHandler exportResource)
    {
       this.rootRegistration = rootRegistration;
       this.bindingProviders = bindingProviders;
+      this.exportResource = exportResource;
    }
 
    @Override
@@ -59,7 +67,7 @@ public class ExtensionContextImpl implements ExtensionContext
          public ManagedResource.Registration registerManagedResource(ManagedDescription description)
          {
             ManagedResource.Registration registration = rootRegistration.registerSubResource(name, description);
-            registration.registerOperationHandler(OperationNames.EXPORT_RESOURCE, GlobalOperationHandlers.EXPORT_RESOURCE, ExportResource.DESCRIPTION, true);
+            registration.registerOperationHandler(OperationNames.EXPORT_RESOURCE, exportResource, ExportResource.DESCRIPTION, true);
 
             return registration;
          }
@@ -0,0 +1,153 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api;
+
+import org.gatein.management.api.ManagedDescription;
+import org.gatein.management.api.operation.OperationContext;
+import org.gatein.management.api.operation.OperationHandler;
+import org.gatein.management.api.operation.QueryOperationHandler;
+import org.gatein.management.api.operation.model.ExportResourceModel;
+import org.gatein.management.api.operation.model.ExportTask;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Managed descriptions, export tasks and export handlers shared by the export and import tests.
+ *
+ * @version $Revision$
+ */
+public class ExportFixtures
+{
+   public static final ManagedDescription DESC = new ManagedDescription()
+   {
+      @Override
+      public String getDescription()
+      {
+         return "description";
+      }
+   };
+
+   private ExportFixtures()
+   {
+   }
+
+   /**
+    * @return task writing the name of the entry as its content
+    */
+   public static ExportTask task(String entry)
+   {
+      return task(entry, entry);
+   }
+
+   /**
+    * @return task writing the given data as the content of the entry
+    */
+   public static ExportTask task(final String entry, final String data)
+   {
+      return new ExportTask()
+      {
+         @Override
+         public String getEntry()
+         {
+            return entry;
+         }
+
+         @Override
+         public void export(OutputStream outputStream) throws IOException
+         {
+            outputStream.write(data.getBytes("UTF-8"));
+         }
+      };
+   }
+
+   /**
+    * @return task counting down started and waiting for release before writing the name of the entry as its content
+    */
+   public static ExportTask task(final String entry, final CountDownLatch started, final CountDownLatch release)
+   {
+      return new ExportTask()
+      {
+         @Override
+         public String getEntry()
+         {
+            return entry;
+         }
+
+         @Override
+         public void export(OutputStream outputStream) throws IOException
+         {
+            started.countDown();
+            try
+            {
+               release.await();
+            }
+            catch (InterruptedException e)
+            {
+               throw new IOException("Interrupted");
+            }
+            outputStream.write(entry.getBytes("UTF-8"));
+         }
+      };
+   }
+
+   /**
+    * @return export handler returning the given model
+    */
+   public static OperationHandler exportHandler(final ExportResourceModel model)
+   {
+      return new QueryOperationHandler<ExportResourceModel>()
+      {
+         @Override
+         protected ExportResourceModel execute(OperationContext operationContext)
+         {
+            return model;
+         }
+      };
+   }
+
+   /**
+    * Export handler returning a single task named after the address of the resource.
+    */
+   public static class AddressExportHandler extends QueryOperationHandler<ExportResourceModel>
+   {
+      @Override
+      protected ExportResourceModel execute(OperationContext operationContext)
+      {
+         String address = operationContext.getAddress().toString();
+         exporting(operationContext, address);
+
+         return new ExportResourceModel(new ArrayList<ExportTask>(Arrays.asList(task(address))));
+      }
+
+      /**
+       * Called before the task of the resource is returned, to track or fail the export of the resource.
+       */
+      protected void exporting(OperationContext operationContext, String address)
+      {
+      }
+   }
+}
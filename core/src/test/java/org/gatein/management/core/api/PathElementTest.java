@@ -25,6 +25,8 @@ package org.gatein.management.core.api;
 import org.junit.Test;
 
 import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.PatternSyntaxException;
 
 import static org.junit.Assert.*;
@@ -86,6 +88,59 @@ public class PathElementTest
       assertEquals("blah", PathElement.pathElement("foo/{required}/{optional: .*}").resolve("optional", "foo/bar/blah"));
    }
 
+   @Test
+   public void testMatchesRegion() throws ParseException
+   {
+      assertTrue(PathElement.pathElement("foo").matches("/foo/bar", 1, 4));
+      assertFalse(PathElement.pathElement("foo").matches("/foo/bar", 1, 5));
+      assertTrue(PathElement.pathElement("{site-type}sites").matches("/portalsites/classic", 1, 12));
+      assertFalse(PathElement.pathElement("{site-type}sites").matches("/sites/classic", 1, 6));
+      assertFalse(PathElement.pathElement("{site-type}sites").matches("/portal/sites", 1, 13));
+      assertTrue(PathElement.pathElement("{path: .*}").matches("/foo/bar", 1, 8));
+   }
+
+   @Test
+   public void testLiteralWithRegexCharacters() throws ParseException
+   {
+      assertTrue(PathElement.pathElement("foo.bar").matches("foo.bar"));
+      assertFalse(PathElement.pathElement("foo.bar").isTemplate());
+      assertTrue(PathElement.pathElement("foo-bar").matches("foo-bar"));
+      assertFalse(PathElement.pathElement("foo-bar").matches("foo-ba"));
+      assertNull(PathElement.pathElement("foo-bar").resolve("foo", "foo-bar"));
+   }
+
+   @Test
+   public void testResolveWrappedVariable() throws ParseException
+   {
+      assertEquals("portal", PathElement.pathElement("{site-type}sites").resolve("site-type", "portalsites"));
+      assertEquals("bar", PathElement.pathElement("foo/{name}").resolve("name", "/foo/bar"));
+      assertNull(PathElement.pathElement("foo/{name}").resolve("other", "foo/bar"));
+      assertNull(PathElement.pathElement("foo/{name}").resolve("name", "foo/bar/blah"));
+   }
+
+   @Test
+   public void testBind() throws ParseException
+   {
+      Map<String, String> bindings = new HashMap<String, String>();
+      PathElement.pathElement("{alphapath: [a-zA-Z]{3}}/{numpath: [0-9]*}").bind("/foo/123", bindings);
+      assertEquals(2, bindings.size());
+      assertEquals("foo", bindings.get("alphapath"));
+      assertEquals("123", bindings.get("numpath"));
+
+      bindings.clear();
+      PathElement.pathElement("foo/{required}/{optional: .*}").bind("foo/bar/", bindings);
+      assertEquals(1, bindings.size());
+      assertEquals("bar", bindings.get("required"));
+
+      bindings.clear();
+      PathElement.pathElement("{site-type}sites").bind("portalsites", bindings);
+      assertEquals("portal", bindings.get("site-type"));
+
+      bindings.clear();
+      PathElement.pathElement("foo").bind("foo", bindings);
+      assertTrue(bindings.isEmpty());
+   }
+
    @Test
    public void testBadTemplateExpression()
    {
@@ -25,9 +25,13 @@ package org.gatein.management.core.api;
 import org.gatein.management.api.ManagedDescription;
 import org.gatein.management.api.ManagedResource;
 import org.gatein.management.api.PathAddress;
+import org.gatein.management.api.ResolvableManagedResource;
 import org.gatein.management.api.operation.OperationHandler;
 import org.junit.Test;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -216,6 +220,7 @@ public class SimpleManagedResourceTest
       assertEquals("group", address.resolvePathTemplate("site-type"));
       assertEquals("platform/administrators", address.resolvePathTemplate("site-name"));
       assertEquals("page description", root.getResourceDescription(address).getDescription());
+      assertEquals(2, address.getPathTemplateBindings().size());
       assertNotNull(root.getOperationHandler(address, "read-resource"));
       assertEquals(pagesOh, root.getOperationHandler(address, "read-resource"));
 
@@ -240,6 +245,34 @@ public class SimpleManagedResourceTest
       assertEquals(navOh, root.getOperationHandler(address, "read-resource"));
    }
 
+   @Test
+   public void testPathTemplateRouting()
+   {
+      SimpleManagedResource root = createRootResource();
+      root.registerSubResource("foo", description("foo description"));
+      root.registerSubResource("{name}/bar", description("name bar description"));
+      root.registerSubResource("a/b", description("a b description"));
+      root.registerSubResource("{name}", description("name description")).registerSubResource("child", description("child description"));
+
+      PathAddress address = PathAddress.pathAddress("foo");
+      assertEquals("foo description", root.getResourceDescription(address).getDescription());
+
+      // Literal 'foo' has no children, so routing falls back to the template.
+      address = PathAddress.pathAddress("foo", "bar");
+      assertEquals("name bar description", root.getResourceDescription(address).getDescription());
+      assertEquals("foo", address.resolvePathTemplate("name"));
+
+      address = PathAddress.pathAddress("a", "b");
+      assertEquals("a b description", root.getResourceDescription(address).getDescription());
+
+      address = PathAddress.pathAddress("a", "child");
+      assertEquals("child description", root.getResourceDescription(address).getDescription());
+      assertEquals("a", address.resolvePathTemplate("name"));
+
+      assertNull(root.getSubResource(PathAddress.pathAddress("a", "b", "c")));
+      assertNull(root.getSubResource(PathAddress.pathAddress("a", "c")));
+   }
+
    @Test
    public void testSubResourceDescription()
    {
@@ -420,6 +453,105 @@ public class SimpleManagedResourceTest
       assertNotNull(root.getOperationHandler(PathAddress.pathAddress("component1", "foo", "bar"), "read-resource"));
    }
 
+   @Test
+   public void testInheritedOperationRegisteredAfterSubResource()
+   {
+      OperationHandler globalOh = mock(OperationHandler.class);
+      OperationHandler aOh = mock(OperationHandler.class);
+
+      SimpleManagedResource root = createRootResource();
+      ManagedResource.Registration a = root.registerSubResource("a", description("a description"));
+      a.registerSubResource("a1", description("a1 description")).registerSubResource("a11", description("a11 description"));
+
+      PathAddress address = PathAddress.pathAddress("a", "a1", "a11");
+      assertNull(root.getOperationHandler(address, "read-resource"));
+      assertTrue(root.getOperationDescriptions(address).isEmpty());
+
+      root.registerOperationHandler("read-resource", globalOh, description("global read-resource"), true);
+      assertEquals(globalOh, root.getOperationHandler(address, "read-resource"));
+
+      a.registerOperationHandler("read-resource", aOh, description("a read-resource"), true);
+      assertEquals(aOh, root.getOperationHandler(address, "read-resource"));
+      assertEquals(globalOh, root.getOperationHandler(PathAddress.empty(), "read-resource"));
+      assertEquals("a read-resource", root.getOperationDescriptions(address).get("read-resource").getDescription());
+
+      try
+      {
+         root.getOperationDescriptions(address).clear();
+         fail("Operation descriptions should be immutable");
+      }
+      catch (UnsupportedOperationException e)
+      {
+      }
+   }
+
+   @Test
+   public void testResolve()
+   {
+      OperationHandler globalOh = mock(OperationHandler.class);
+      OperationHandler fooOh = mock(OperationHandler.class);
+
+      SimpleManagedResource root = createRootResource();
+      root.registerOperationHandler("read-resource", globalOh, description("global read-resource"), true);
+
+      ManagedResource.Registration foo = root.registerSubResource("foo", description("foo description"));
+      foo.registerOperationHandler("foo-op", fooOh, description("foo operation"));
+      foo.registerSubResource("{name}", description("name description"));
+
+      PathAddress address = PathAddress.pathAddress("foo", "bar");
+      ResolvableManagedResource.Resolution resolution = root.resolve(address, "read-resource");
+      assertNotNull(resolution);
+      assertSame(address, resolution.getAddress());
+      assertEquals("name description", resolution.getResource().getResourceDescription(PathAddress.empty()).getDescription());
+      assertEquals(globalOh, resolution.getOperationHandler());
+      assertEquals("global read-resource", resolution.getOperationDescription().getDescription());
+      assertNull(resolution.getOperationHandler("foo-op"));
+      assertEquals(asSet("read-resource"), resolution.getOperationDescriptions().keySet());
+      assertEquals("bar", address.resolvePathTemplate("name"));
+
+      resolution = root.resolve(PathAddress.pathAddress("foo"), "foo-op");
+      assertEquals(fooOh, resolution.getOperationHandler());
+      assertEquals(globalOh, resolution.getOperationHandler("read-resource"));
+      assertEquals(asSet("read-resource", "foo-op"), resolution.getOperationDescriptions().keySet());
+
+      resolution = root.resolve(PathAddress.pathAddress("foo"), "unknown-op");
+      assertNotNull(resolution);
+      assertNull(resolution.getOperationHandler());
+
+      assertNull(root.resolve(PathAddress.pathAddress("bar"), "read-resource"));
+   }
+
+   @Test
+   public void testResolveByLookups()
+   {
+      OperationHandler fooOh = mock(OperationHandler.class);
+
+      final SimpleManagedResource root = createRootResource();
+      ManagedResource.Registration foo = root.registerSubResource("foo", description("foo description"));
+      foo.registerOperationHandler("foo-op", fooOh, description("foo operation"));
+
+      // Resource only implementing ManagedResource, as extensions may provide
+      ManagedResource resource = (ManagedResource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ManagedResource.class}, new InvocationHandler()
+      {
+         @Override
+         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+         {
+            return method.invoke(root, args);
+         }
+      });
+
+      PathAddress address = PathAddress.pathAddress("foo");
+      ResolvableManagedResource.Resolution resolution = AbstractManagedResource.resolve(resource, address, "foo-op");
+      assertNotNull(resolution);
+      assertSame(address, resolution.getAddress());
+      assertEquals("foo description", resolution.getResource().getResourceDescription(PathAddress.empty()).getDescription());
+      assertEquals(fooOh, resolution.getOperationHandler());
+      assertEquals("foo operation", resolution.getOperationDescription().getDescription());
+      assertEquals(asSet("foo-op"), resolution.getOperationDescriptions().keySet());
+
+      assertNull(AbstractManagedResource.resolve(resource, PathAddress.pathAddress("bar"), "foo-op"));
+   }
+
    @Test
    public void testLocationString()
    {
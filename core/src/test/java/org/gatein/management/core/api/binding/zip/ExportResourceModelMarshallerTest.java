@@ -0,0 +1,342 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.binding.zip;
+
+import org.gatein.management.api.binding.BindingException;
+import org.gatein.management.api.operation.model.ExportManifest;
+import org.gatein.management.api.operation.model.ExportResourceModel;
+import org.gatein.management.api.operation.model.ExportTask;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.gatein.management.core.api.ExportFixtures.*;
+import static org.junit.Assert.*;
+
+/**
+ * @version $Revision$
+ */
+public class ExportResourceModelMarshallerTest
+{
+   @Test
+   public void testStreaming() throws Exception
+   {
+      TrackingOutputStream out = new TrackingOutputStream();
+      new ExportResourceModelMarshaller().marshal(new ExportResourceModel(task("one.xml", "one"), task("two/two.xml", "two")), out);
+
+      assertFalse(out.closed);
+      assertEntries(out.toByteArray());
+   }
+
+   @Test
+   public void testSpooling() throws Exception
+   {
+      int tempFiles = countTempFiles();
+
+      TrackingOutputStream out = new TrackingOutputStream();
+      new ExportResourceModelMarshaller(true).marshal(new ExportResourceModel(task("one.xml", "one"), task("two/two.xml", "two")), out);
+
+      assertFalse(out.closed);
+      assertEntries(out.toByteArray());
+      assertEquals(tempFiles, countTempFiles());
+   }
+
+   @Test
+   public void testSpoolingFailure() throws Exception
+   {
+      int tempFiles = countTempFiles();
+
+      ExportTask failing = new ExportTask()
+      {
+         @Override
+         public String getEntry()
+         {
+            return "fail.xml";
+         }
+
+         @Override
+         public void export(OutputStream outputStream) throws IOException
+         {
+            throw new IOException("failure");
+         }
+      };
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try
+      {
+         new ExportResourceModelMarshaller(true).marshal(new ExportResourceModel(task("one.xml", "one"), failing), out);
+         fail();
+      }
+      catch (BindingException e)
+      {
+      }
+
+      assertEquals(0, out.size());
+      assertEquals(tempFiles, countTempFiles());
+   }
+
+   @Test
+   public void testConcurrent() throws Exception
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try
+      {
+         List<ExportTask> tasks = new ArrayList<ExportTask>();
+         for (int i = 0; i < 200; i++)
+         {
+            tasks.add(task("entry-" + i + ".xml", "data-" + i));
+         }
+
+         // Small limits so the writer has to wait for tasks. Both archives are deterministic so that the times of
+         // their entries do not differ.
+         ExportResourceModel model = new ExportResourceModel(tasks);
+         model.setDeterministic(true);
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         new ExportResourceModelMarshaller(false, executor, 3, 16).marshal(model, out);
+
+         ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+         for (int i = 0; i < 200; i++)
+         {
+            assertEquals("entry-" + i + ".xml", zis.getNextEntry().getName());
+            assertEquals("data-" + i, read(zis));
+         }
+         assertNull(zis.getNextEntry());
+
+         ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+         new ExportResourceModelMarshaller().marshal(model, sequential);
+         assertTrue(Arrays.equals(sequential.toByteArray(), out.toByteArray()));
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testConcurrentFailure() throws Exception
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         ExportTask failing = new ExportTask()
+         {
+            @Override
+            public String getEntry()
+            {
+               return "fail.xml";
+            }
+
+            @Override
+            public void export(OutputStream outputStream) throws IOException
+            {
+               throw new IOException("failure");
+            }
+         };
+
+         try
+         {
+            new ExportResourceModelMarshaller(false, executor, 2, 1024).marshal(new ExportResourceModel(task("one.xml", "one"), failing), new ByteArrayOutputStream());
+            fail();
+         }
+         catch (BindingException e)
+         {
+            assertEquals("failure", e.getCause().getMessage());
+         }
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testCompression() throws Exception
+   {
+      ExportResourceModel model = new ExportResourceModel(task("one.xml", "one"), task("two/two.xml", "two"));
+      model.setCompressionLevel(ExportResourceModel.STORED);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new ExportResourceModelMarshaller().marshal(model, out);
+      assertEntries(out.toByteArray());
+
+      ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+      assertEquals(ZipEntry.STORED, zis.getNextEntry().getMethod());
+
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         ByteArrayOutputStream concurrent = new ByteArrayOutputStream();
+         new ExportResourceModelMarshaller(false, executor, 2, 1024).marshal(model, concurrent);
+         assertTrue(Arrays.equals(out.toByteArray(), concurrent.toByteArray()));
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+
+      for (int level = 0; level <= 9; level++)
+      {
+         model.setCompressionLevel(level);
+         out = new ByteArrayOutputStream();
+         new ExportResourceModelMarshaller().marshal(model, out);
+         assertEntries(out.toByteArray());
+      }
+   }
+
+   @Test
+   public void testDeterministic() throws Exception
+   {
+      ExportResourceModel model = new ExportResourceModel(task("one.xml", "one"), task("two/two.xml", "two"));
+      model.setDeterministic(true);
+      ByteArrayOutputStream first = new ByteArrayOutputStream();
+      new ExportResourceModelMarshaller().marshal(model, first);
+      assertEntries(first.toByteArray());
+
+      ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(first.toByteArray()));
+      long time = zis.getNextEntry().getTime();
+      assertEquals(time, zis.getNextEntry().getTime());
+
+      // Entry times would have changed by now
+      Thread.sleep(2100);
+
+      ExportResourceModel again = new ExportResourceModel(task("one.xml", "one"), task("two/two.xml", "two"));
+      again.setDeterministic(true);
+      ByteArrayOutputStream second = new ByteArrayOutputStream();
+      new ExportResourceModelMarshaller().marshal(again, second);
+      assertTrue(Arrays.equals(first.toByteArray(), second.toByteArray()));
+   }
+
+   @Test
+   public void testIncremental() throws Exception
+   {
+      ExportResourceModel model = new ExportResourceModel(task("one.xml", "one"), task("two/two.xml", "two"));
+      model.setManifest(true);
+
+      ExportManifestCache manifestCache = new ExportManifestCache();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new ExportResourceModelMarshaller(false, null, 0, 0, manifestCache).marshal(model, out);
+
+      ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+      assertEquals("one.xml", zis.getNextEntry().getName());
+      assertEquals("two/two.xml", zis.getNextEntry().getName());
+      assertEquals(ExportManifest.ENTRY_NAME, zis.getNextEntry().getName());
+      ExportManifest manifest = ExportManifest.parse(read(zis));
+      assertNull(zis.getNextEntry());
+
+      assertEquals(2, manifest.getEntries().size());
+      assertEquals(3, manifest.getEntry("one.xml").getSize());
+      assertNotNull(manifestCache.get(manifest.getToken()));
+
+      // Other management services don't share the manifests
+      assertNull(new ExportManifestCache().get(manifest.getToken()));
+
+      ExportResourceModel incremental = new ExportResourceModel(task("one.xml", "one"), task("three.xml", "three"));
+      incremental.setPreviousManifest(manifest);
+      for (ExecutorService executor : Arrays.asList(null, Executors.newFixedThreadPool(2)))
+      {
+         try
+         {
+            out = new ByteArrayOutputStream();
+            new ExportResourceModelMarshaller(false, executor, 2, 1024).marshal(incremental, out);
+         }
+         finally
+         {
+            if (executor != null) executor.shutdownNow();
+         }
+
+         zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+         assertEquals("three.xml", zis.getNextEntry().getName());
+         assertEquals("three", read(zis));
+         assertEquals(ExportManifest.ENTRY_NAME, zis.getNextEntry().getName());
+         ExportManifest next = ExportManifest.parse(read(zis));
+         assertNull(zis.getNextEntry());
+
+         assertEquals(2, next.getEntries().size());
+         assertTrue(next.isUnchanged("one.xml", 3, manifest.getEntry("one.xml").getHash()));
+         assertNotNull(next.getEntry("three.xml"));
+         assertEquals(Arrays.asList("two/two.xml"), next.getDeletions());
+      }
+   }
+
+   private static void assertEntries(byte[] zip) throws IOException
+   {
+      ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zip));
+      ZipEntry entry = zis.getNextEntry();
+      assertEquals("one.xml", entry.getName());
+      assertEquals("one", read(zis));
+      entry = zis.getNextEntry();
+      assertEquals("two/two.xml", entry.getName());
+      assertEquals("two", read(zis));
+      assertNull(zis.getNextEntry());
+   }
+
+   private static String read(ZipInputStream zis) throws IOException
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      byte[] buffer = new byte[64];
+      int read;
+      while ((read = zis.read(buffer)) != -1)
+      {
+         baos.write(buffer, 0, read);
+      }
+      return baos.toString("UTF-8");
+   }
+
+   private static int countTempFiles()
+   {
+      String[] files = new File(System.getProperty("java.io.tmpdir")).list(new FilenameFilter()
+      {
+         @Override
+         public boolean accept(File dir, String name)
+         {
+            return name.startsWith("gatein-export") && name.endsWith(".zip");
+         }
+      });
+
+      return (files == null) ? 0 : files.length;
+   }
+
+   private static class TrackingOutputStream extends ByteArrayOutputStream
+   {
+      private boolean closed;
+
+      @Override
+      public void close() throws IOException
+      {
+         closed = true;
+         super.close();
+      }
+   }
+}
@@ -0,0 +1,525 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.binding.zip;
+
+import org.gatein.management.api.operation.model.CurrentStateDigester;
+import org.gatein.management.api.operation.model.ExportManifest;
+import org.gatein.management.api.operation.model.ExportResourceModel;
+import org.gatein.management.api.operation.model.ExportTask;
+import org.gatein.management.api.operation.model.ImportResourceModel;
+import org.gatein.management.api.operation.model.ImportResultModel;
+import org.gatein.management.api.operation.model.ImportTask;
+import org.gatein.management.api.operation.model.TwoPhaseImportTask;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.gatein.management.core.api.ExportFixtures.*;
+import static org.junit.Assert.*;
+
+/**
+ * @version $Revision$
+ */
+public class ImportResourceModelMarshallerTest
+{
+   @Test
+   public void testEntries() throws Exception
+   {
+      ImportResourceModel model = new ImportResourceModelMarshaller().unmarshal(archive("one.xml", "two/two.xml", "three.xml"));
+      try
+      {
+         // Manifest is not an entry to import
+         assertEquals(Arrays.asList("one.xml", "two/two.xml", "three.xml"), Arrays.asList(model.getEntries().toArray()));
+
+         assertEquals("two/two.xml", read(model.getEntryStream("two/two.xml")));
+         assertEquals("one.xml", read(model.getEntryStream("one.xml")));
+         assertNull(model.getEntryStream("four.xml"));
+      }
+      finally
+      {
+         model.release();
+      }
+
+      try
+      {
+         model.getEntryStream("one.xml");
+         fail();
+      }
+      catch (IllegalStateException e)
+      {
+      }
+   }
+
+   @Test
+   public void testImportEntries() throws Exception
+   {
+      ImportResourceModel model = new ImportResourceModelMarshaller().unmarshal(archive("one.xml", "two/two.xml"));
+      try
+      {
+         Map<String, String> imported = importEntries(model);
+         assertEquals(2, imported.size());
+         assertEquals("one.xml", imported.get("one.xml"));
+         assertEquals("two/two.xml", imported.get("two/two.xml"));
+      }
+      finally
+      {
+         model.release();
+      }
+   }
+
+   @Test
+   public void testImportEntriesConcurrently() throws Exception
+   {
+      String[] entries = new String[20];
+      for (int i = 0; i < entries.length; i++)
+      {
+         entries[i] = "entry-" + i + ".xml";
+      }
+
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try
+      {
+         ImportResourceModel model = new ImportResourceModelMarshaller(executor, 4).unmarshal(archive(entries));
+         try
+         {
+            Map<String, String> imported = importEntries(model);
+            assertEquals(entries.length, imported.size());
+            for (String entry : entries)
+            {
+               assertEquals(entry, imported.get(entry));
+            }
+         }
+         finally
+         {
+            model.release();
+         }
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testImportFailure() throws Exception
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         ImportResourceModel model = new ImportResourceModelMarshaller(executor, 2).unmarshal(archive("one.xml", "two.xml", "three.xml"));
+         try
+         {
+            model.importEntries(new ImportTask()
+            {
+               @Override
+               public void importEntry(String entry, InputStream inputStream) throws IOException
+               {
+                  if (entry.equals("two.xml")) throw new IOException("Bad entry " + entry);
+               }
+            });
+            fail();
+         }
+         catch (IOException e)
+         {
+            assertEquals("Bad entry two.xml", e.getMessage());
+         }
+         finally
+         {
+            model.release();
+         }
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testTwoPhaseImport() throws Exception
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try
+      {
+         ImportResourceModel model = new ImportResourceModelMarshaller(executor, 4).unmarshal(archive("pages/one.xml", "site.xml", "navigation.xml", "pages/two.xml", "skip.xml"));
+         try
+         {
+            final List<String> applied = new ArrayList<String>();
+            model.importEntries(new TwoPhaseImportTask<String>()
+            {
+               @Override
+               public String validate(String entry, InputStream inputStream) throws IOException
+               {
+                  return entry.equals("skip.xml") ? null : read(inputStream);
+               }
+
+               @Override
+               public int getOrder(String entry, String data)
+               {
+                  if (data.equals("site.xml")) return 0;
+                  return data.startsWith("pages/") ? 1 : 2;
+               }
+
+               @Override
+               public void apply(String entry, String data) throws IOException
+               {
+                  applied.add(entry);
+               }
+            });
+
+            assertEquals(Arrays.asList("site.xml", "pages/one.xml", "pages/two.xml", "navigation.xml"), applied);
+         }
+         finally
+         {
+            model.release();
+         }
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testTwoPhaseImportValidationFailure() throws Exception
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         ImportResourceModel model = new ImportResourceModelMarshaller(executor, 2).unmarshal(archive("one.xml", "two.xml", "three.xml"));
+         final List<String> applied = new ArrayList<String>();
+         try
+         {
+            model.importEntries(new TwoPhaseImportTask<String>()
+            {
+               @Override
+               public String validate(String entry, InputStream inputStream) throws IOException
+               {
+                  if (entry.equals("three.xml")) throw new IOException("Bad entry " + entry);
+                  return entry;
+               }
+
+               @Override
+               public int getOrder(String entry, String data)
+               {
+                  return 0;
+               }
+
+               @Override
+               public void apply(String entry, String data) throws IOException
+               {
+                  applied.add(entry);
+               }
+            });
+            fail();
+         }
+         catch (IOException e)
+         {
+            assertEquals("Bad entry three.xml", e.getMessage());
+         }
+         finally
+         {
+            model.release();
+         }
+
+         // Nothing applied when an entry is not valid
+         assertTrue(applied.isEmpty());
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testValidationFailureWaitsForRunningEntries() throws Exception
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         final ImportResourceModel model = new ImportResourceModelMarshaller(executor, 3).unmarshal(archive("blocked.xml", "bad.xml", "queued.xml"));
+         final CountDownLatch blockedStarted = new CountDownLatch(1);
+         final CountDownLatch release = new CountDownLatch(1);
+         final List<String> validated = Collections.synchronizedList(new ArrayList<String>());
+         final List<String> applied = Collections.synchronizedList(new ArrayList<String>());
+         final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+         Thread importer = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  model.importEntries(new TwoPhaseImportTask<String>()
+                  {
+                     @Override
+                     public String validate(String entry, InputStream inputStream) throws IOException
+                     {
+                        try
+                        {
+                           if (entry.equals("blocked.xml"))
+                           {
+                              blockedStarted.countDown();
+                              release.await();
+                           }
+                           else if (entry.equals("bad.xml"))
+                           {
+                              blockedStarted.await();
+                              throw new IOException("Bad entry " + entry);
+                           }
+                        }
+                        catch (InterruptedException e)
+                        {
+                           throw new IOException("Interrupted");
+                        }
+
+                        // Archive is still readable while the import waits for this entry
+                        String data = read(inputStream);
+                        validated.add(entry);
+                        return data;
+                     }
+
+                     @Override
+                     public int getOrder(String entry, String data)
+                     {
+                        return 0;
+                     }
+
+                     @Override
+                     public void apply(String entry, String data) throws IOException
+                     {
+                        applied.add(entry);
+                     }
+                  });
+               }
+               catch (Throwable t)
+               {
+                  failure.set(t);
+               }
+            }
+         };
+         importer.start();
+
+         // Import fails only once the entry still running completed
+         importer.join(500);
+         assertTrue(importer.isAlive());
+
+         release.countDown();
+         importer.join(10000);
+         assertFalse(importer.isAlive());
+         model.release();
+
+         assertTrue(failure.get() instanceof IOException);
+         assertEquals("Bad entry bad.xml", failure.get().getMessage());
+         // The thread of the failed entry may pick up the queued one before the failure is seen
+         assertTrue(validated.contains("blocked.xml"));
+         assertFalse(validated.contains("bad.xml"));
+         assertTrue(applied.isEmpty());
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testDeltaImport() throws Exception
+   {
+      ImportResourceModel model = new ImportResourceModelMarshaller().unmarshal(archive("one.xml", "two.xml", "three.xml"));
+      try
+      {
+         model.setDelta(true);
+         DeltaTask task = new DeltaTask();
+         task.current.put("one.xml", "one.xml");
+         task.current.put("two.xml", "changed");
+         model.importEntries(task);
+
+         assertEquals(Arrays.asList("two.xml", "three.xml"), task.imported);
+         ImportResultModel result = model.getResult();
+         assertEquals(2, result.getAppliedCount());
+         assertEquals(1, result.getSkippedCount());
+         assertEquals(0, result.getFailedCount());
+      }
+      finally
+      {
+         model.release();
+      }
+   }
+
+   @Test
+   public void testEntryHash() throws Exception
+   {
+      ImportResourceModel model = new ImportResourceModelMarshaller().unmarshal(archive("one.xml"));
+      ImportResourceModel withoutManifest = new ImportResourceModelMarshaller().unmarshal(new ByteArrayInputStream(zip("one.xml")));
+      try
+      {
+         String hash = ExportManifest.digest(task("one.xml"));
+         assertEquals(hash, model.getEntryHash("one.xml"));
+         assertEquals(hash, withoutManifest.getEntryHash("one.xml"));
+         assertNull(model.getEntryHash("two.xml"));
+         assertNull(model.getResult());
+      }
+      finally
+      {
+         model.release();
+         withoutManifest.release();
+      }
+   }
+
+   @Test
+   public void testImportFailureResult() throws Exception
+   {
+      ImportResourceModel model = new ImportResourceModelMarshaller().unmarshal(archive("one.xml", "two.xml", "three.xml"));
+      try
+      {
+         model.setDelta(true);
+         DeltaTask task = new DeltaTask();
+         task.current.put("one.xml", "one.xml");
+         task.failing = "three.xml";
+         model.importEntries(task);
+         fail();
+      }
+      catch (IOException e)
+      {
+         ImportResultModel result = model.getResult();
+         assertEquals(1, result.getAppliedCount());
+         assertEquals(1, result.getSkippedCount());
+         assertEquals(1, result.getFailedCount());
+      }
+      finally
+      {
+         model.release();
+      }
+   }
+
+   private static Map<String, String> importEntries(ImportResourceModel model) throws IOException
+   {
+      final Map<String, String> imported = new ConcurrentHashMap<String, String>();
+      model.importEntries(new ImportTask()
+      {
+         @Override
+         public void importEntry(String entry, InputStream inputStream) throws IOException
+         {
+            imported.put(entry, read(inputStream));
+         }
+      });
+      return imported;
+   }
+
+   // Archive with a manifest, whose entries contain their own name
+   private static InputStream archive(String...entries) throws Exception
+   {
+      ExportTask[] tasks = new ExportTask[entries.length];
+      for (int i = 0; i < entries.length; i++)
+      {
+         tasks[i] = task(entries[i]);
+      }
+
+      ExportResourceModel model = new ExportResourceModel(tasks);
+      model.setManifest(true);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new ExportResourceModelMarshaller().marshal(model, out);
+      return new ByteArrayInputStream(out.toByteArray());
+   }
+
+   private static byte[] zip(String...entries) throws IOException
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ZipOutputStream zos = new ZipOutputStream(out);
+      for (String entry : entries)
+      {
+         zos.putNextEntry(new ZipEntry(entry));
+         zos.write(entry.getBytes("UTF-8"));
+         zos.closeEntry();
+      }
+      zos.close();
+      return out.toByteArray();
+   }
+
+   // Import task whose current state of an entry is exported as the given content
+   private static class DeltaTask implements ImportTask, CurrentStateDigester
+   {
+      private final Map<String, String> current = new HashMap<String, String>();
+      private final List<String> imported = new ArrayList<String>();
+      private String failing;
+
+      @Override
+      public String getCurrentHash(String entry) throws IOException
+      {
+         final String content = current.get(entry);
+         if (content == null) return null;
+
+         return ExportManifest.digest(new ExportTask()
+         {
+            @Override
+            public String getEntry()
+            {
+               return null;
+            }
+
+            @Override
+            public void export(OutputStream outputStream) throws IOException
+            {
+               outputStream.write(content.getBytes("UTF-8"));
+            }
+         });
+      }
+
+      @Override
+      public void importEntry(String entry, InputStream inputStream) throws IOException
+      {
+         if (entry.equals(failing)) throw new IOException("Bad entry " + entry);
+
+         imported.add(entry);
+      }
+   }
+
+   private static String read(InputStream in) throws IOException
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      byte[] buffer = new byte[64];
+      int read;
+      while ((read = in.read(buffer)) != -1)
+      {
+         baos.write(buffer, 0, read);
+      }
+      return baos.toString("UTF-8");
+   }
+}
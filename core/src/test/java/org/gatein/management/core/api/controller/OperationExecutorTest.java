@@ -0,0 +1,146 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.controller;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @version $Revision$
+ */
+public class OperationExecutorTest
+{
+   @Test
+   public void testOperationLimit() throws Exception
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try
+      {
+         OperationExecutor operationExecutor = new OperationExecutor(executor, 4, Collections.singletonMap("export-resource", 2), 16);
+
+         final CountDownLatch started = new CountDownLatch(2);
+         final CountDownLatch release = new CountDownLatch(1);
+         final AtomicInteger running = new AtomicInteger();
+         final AtomicInteger maxRunning = new AtomicInteger();
+         Callable<String> export = new Callable<String>()
+         {
+            @Override
+            public String call() throws Exception
+            {
+               int count = running.incrementAndGet();
+               synchronized (maxRunning)
+               {
+                  maxRunning.set(Math.max(maxRunning.get(), count));
+               }
+               started.countDown();
+               release.await();
+               running.decrementAndGet();
+               return "exported";
+            }
+         };
+
+         Future<?>[] exports = new Future<?>[6];
+         for (int i = 0; i < exports.length; i++)
+         {
+            exports[i] = operationExecutor.submit("export-resource", export);
+         }
+
+         // Exports waiting for their turn leave threads to other operations
+         Future<String> read = operationExecutor.submit("read-resource", new Callable<String>()
+         {
+            @Override
+            public String call() throws Exception
+            {
+               return "read";
+            }
+         });
+         assertEquals("read", read.get(5, TimeUnit.SECONDS));
+
+         // Both exports allowed to run are running, the others waiting for their turn
+         assertTrue(started.await(5, TimeUnit.SECONDS));
+         assertEquals(2, running.get());
+         release.countDown();
+         for (Future<?> future : exports)
+         {
+            assertEquals("exported", future.get(5, TimeUnit.SECONDS));
+         }
+         // Never more than the limit running at once
+         assertEquals(2, maxRunning.get());
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testPendingLimit() throws Exception
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(1);
+      try
+      {
+         OperationExecutor operationExecutor = new OperationExecutor(executor, 1, Collections.<String, Integer>emptyMap(), 1);
+
+         final CountDownLatch release = new CountDownLatch(1);
+         Callable<Void> blocked = new Callable<Void>()
+         {
+            @Override
+            public Void call() throws Exception
+            {
+               release.await();
+               return null;
+            }
+         };
+
+         Future<Void> first = operationExecutor.submit("export-resource", blocked);
+         Future<Void> second = operationExecutor.submit("export-resource", blocked);
+         try
+         {
+            operationExecutor.submit("export-resource", blocked);
+            fail();
+         }
+         catch (RejectedExecutionException e)
+         {
+         }
+
+         release.countDown();
+         first.get(5, TimeUnit.SECONDS);
+         second.get(5, TimeUnit.SECONDS);
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+}
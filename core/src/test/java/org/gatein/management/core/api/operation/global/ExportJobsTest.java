@@ -0,0 +1,313 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.operation.global;
+
+import org.gatein.management.api.ContentType;
+import org.gatein.management.api.PathAddress;
+import org.gatein.management.api.ResolvableManagedResource;
+import org.gatein.management.api.controller.ManagedRequest;
+import org.gatein.management.api.exceptions.OperationException;
+import org.gatein.management.api.exceptions.ResourceNotFoundException;
+import org.gatein.management.api.operation.OperationContext;
+import org.gatein.management.api.operation.OperationHandler;
+import org.gatein.management.api.operation.OperationNames;
+import org.gatein.management.api.operation.model.ExportJobModel;
+import org.gatein.management.api.operation.model.ExportResourceModel;
+import org.gatein.management.api.operation.model.ExportTask;
+import org.gatein.management.api.operation.model.ReadResourceModel;
+import org.gatein.management.core.api.SimpleManagedResource;
+import org.gatein.management.core.api.binding.GlobalBindingProvider;
+import org.gatein.management.core.api.binding.zip.ExportResourceModelMarshaller;
+import org.gatein.management.core.api.operation.BasicResultHandler;
+import org.gatein.management.core.api.operation.OperationContextImpl;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipInputStream;
+
+import static org.gatein.management.core.api.ExportFixtures.*;
+import static org.junit.Assert.*;
+
+/**
+ * @version $Revision$
+ */
+public class ExportJobsTest
+{
+   @Test
+   public void testExportJob() throws Exception
+   {
+      final CountDownLatch started = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      ExportJobs jobs = new ExportJobs(Executors.newSingleThreadExecutor(), TimeUnit.MINUTES.toMillis(1));
+      try
+      {
+         SimpleManagedResource root = new SimpleManagedResource(null, null, DESC);
+         jobs.registerResources(root);
+
+         OperationHandler exportHandler = exportHandler(new ExportResourceModel(task("one.xml"), task("two.xml", started, release)));
+         root.registerSubResource("sites", DESC).registerOperationHandler(OperationNames.EXPORT_RESOURCE, jobs.asyncExportHandler(exportHandler), DESC);
+
+         ExportJobModel submitted = (ExportJobModel) execute(root, OperationNames.EXPORT_RESOURCE, PathAddress.pathAddress("sites"), Collections.singletonMap("async", Collections.singletonList("true")));
+         assertEquals(ExportJobModel.Status.RUNNING, submitted.getStatus());
+         assertEquals(PathAddress.pathAddress("sites"), submitted.getAddress());
+
+         PathAddress jobAddress = PathAddress.pathAddress(ExportJobModel.RESOURCE_NAME, submitted.getId());
+         ReadResourceModel jobsModel = (ReadResourceModel) execute(root, OperationNames.READ_RESOURCE, PathAddress.pathAddress(ExportJobModel.RESOURCE_NAME), null);
+         assertEquals(Collections.singleton(submitted.getId()), jobsModel.getChildren());
+
+         // Job waits in the second task, after completing the first one
+         assertTrue(started.await(10, TimeUnit.SECONDS));
+         ExportJobModel running = (ExportJobModel) execute(root, OperationNames.READ_STATUS, jobAddress, null);
+         assertEquals(ExportJobModel.Status.RUNNING, running.getStatus());
+         assertEquals(2, running.getTaskCount());
+         assertEquals(1, running.getCompletedTaskCount());
+
+         try
+         {
+            execute(root, OperationNames.EXPORT_RESOURCE, jobAddress, null);
+            fail();
+         }
+         catch (OperationException e)
+         {
+         }
+
+         release.countDown();
+         ExportJobModel status = running;
+         for (int i = 0; i < 1000 && status.getStatus() == ExportJobModel.Status.RUNNING; i++)
+         {
+            Thread.sleep(10);
+            status = (ExportJobModel) execute(root, OperationNames.READ_STATUS, jobAddress, null);
+         }
+         assertEquals(ExportJobModel.Status.COMPLETED, status.getStatus());
+         assertEquals(2, status.getCompletedTaskCount());
+         assertTrue(status.getBytesWritten() > 0);
+
+         ExportJob job = (ExportJob) execute(root, OperationNames.EXPORT_RESOURCE, jobAddress, null);
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         job.writeArchive(out);
+         assertEquals(status.getBytesWritten(), out.size());
+
+         ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+         assertEquals("one.xml", zis.getNextEntry().getName());
+         assertEquals("two.xml", zis.getNextEntry().getName());
+         assertNull(zis.getNextEntry());
+
+         execute(root, OperationNames.REMOVE_RESOURCE, jobAddress, null);
+         assertFalse(job.getArchive().exists());
+         try
+         {
+            execute(root, OperationNames.READ_STATUS, jobAddress, null);
+            fail();
+         }
+         catch (ResourceNotFoundException e)
+         {
+         }
+      }
+      finally
+      {
+         release.countDown();
+         jobs.shutdown();
+      }
+   }
+
+   @Test
+   public void testRemoveBeforeArchiveOpened() throws Exception
+   {
+      final CountDownLatch started = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      ExportJobs jobs = new ExportJobs(executor, TimeUnit.MINUTES.toMillis(1));
+      try
+      {
+         SimpleManagedResource root = new SimpleManagedResource(null, null, DESC);
+         jobs.registerResources(root);
+
+         OperationHandler exportHandler = new AddressExportHandler()
+         {
+            @Override
+            protected void exporting(OperationContext operationContext, String address)
+            {
+               // Ignores the interruption of the job being cancelled, as blocking writes do
+               started.countDown();
+               boolean interrupted = false;
+               while (true)
+               {
+                  try
+                  {
+                     release.await();
+                     break;
+                  }
+                  catch (InterruptedException e)
+                  {
+                     interrupted = true;
+                  }
+               }
+               if (interrupted) Thread.currentThread().interrupt();
+            }
+         };
+         root.registerSubResource("sites", DESC).registerOperationHandler(OperationNames.EXPORT_RESOURCE, jobs.asyncExportHandler(exportHandler), DESC);
+
+         ExportJobModel submitted = (ExportJobModel) execute(root, OperationNames.EXPORT_RESOURCE, PathAddress.pathAddress("sites"), Collections.singletonMap("async", Collections.singletonList("true")));
+         PathAddress jobAddress = PathAddress.pathAddress(ExportJobModel.RESOURCE_NAME, submitted.getId());
+         ExportJob job = jobs.getJob(submitted.getId());
+         assertTrue(started.await(10, TimeUnit.SECONDS));
+
+         execute(root, OperationNames.REMOVE_RESOURCE, jobAddress, null);
+         assertFalse(job.getArchive().exists());
+
+         release.countDown();
+         executor.shutdown();
+         assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+         // Archive is not written for the removed job
+         assertFalse(job.getArchive().exists());
+         assertEquals(ExportJobModel.Status.FAILED, job.getStatus());
+      }
+      finally
+      {
+         release.countDown();
+         jobs.shutdown();
+      }
+   }
+
+   @Test
+   public void testDeterministicExportJob() throws Exception
+   {
+      ExportResourceModel model = new ExportResourceModel(task("one.xml"), task("two.xml"));
+      model.setDeterministic(true);
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      new ExportResourceModelMarshaller().marshal(model, expected);
+
+      // Entry times would have changed by now
+      Thread.sleep(2100);
+
+      ExportJobs jobs = new ExportJobs(Executors.newSingleThreadExecutor(), TimeUnit.MINUTES.toMillis(1));
+      try
+      {
+         SimpleManagedResource root = new SimpleManagedResource(null, null, DESC);
+         jobs.registerResources(root);
+
+         ExportResourceModel exported = new ExportResourceModel(task("one.xml"), task("two.xml"));
+         exported.setDeterministic(true);
+         OperationHandler exportHandler = exportHandler(exported);
+         root.registerSubResource("sites", DESC).registerOperationHandler(OperationNames.EXPORT_RESOURCE, jobs.asyncExportHandler(exportHandler), DESC);
+
+         ExportJobModel submitted = (ExportJobModel) execute(root, OperationNames.EXPORT_RESOURCE, PathAddress.pathAddress("sites"), Collections.singletonMap("async", Collections.singletonList("true")));
+         PathAddress jobAddress = PathAddress.pathAddress(ExportJobModel.RESOURCE_NAME, submitted.getId());
+         ExportJobModel status = submitted;
+         for (int i = 0; i < 1000 && status.getStatus() == ExportJobModel.Status.RUNNING; i++)
+         {
+            Thread.sleep(10);
+            status = (ExportJobModel) execute(root, OperationNames.READ_STATUS, jobAddress, null);
+         }
+         assertEquals(ExportJobModel.Status.COMPLETED, status.getStatus());
+
+         ExportJob job = (ExportJob) execute(root, OperationNames.EXPORT_RESOURCE, jobAddress, null);
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         job.writeArchive(out);
+         assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+      }
+      finally
+      {
+         jobs.shutdown();
+      }
+   }
+
+   @Test
+   public void testPrunedResourceCount() throws Exception
+   {
+      ExportJobs jobs = new ExportJobs(Executors.newSingleThreadExecutor(), TimeUnit.MINUTES.toMillis(1));
+      try
+      {
+         SimpleManagedResource root = new SimpleManagedResource(null, null, DESC);
+         jobs.registerResources(root);
+
+         // Counts pruned resources while tasks are produced, as the streaming traversal does
+         final Iterator<ExportTask> tasks = Collections.singletonList(task("one.xml")).iterator();
+         final ExportResourceModel[] model = new ExportResourceModel[1];
+         model[0] = new ExportResourceModel(new Iterator<ExportTask>()
+         {
+            @Override
+            public boolean hasNext()
+            {
+               if (tasks.hasNext()) return true;
+
+               model[0].setPrunedResourceCount(3);
+               return false;
+            }
+
+            @Override
+            public ExportTask next()
+            {
+               return tasks.next();
+            }
+
+            @Override
+            public void remove()
+            {
+               throw new UnsupportedOperationException();
+            }
+         });
+
+         OperationHandler exportHandler = exportHandler(model[0]);
+         root.registerSubResource("sites", DESC).registerOperationHandler(OperationNames.EXPORT_RESOURCE, jobs.asyncExportHandler(exportHandler), DESC);
+
+         ExportJobModel submitted = (ExportJobModel) execute(root, OperationNames.EXPORT_RESOURCE, PathAddress.pathAddress("sites"), Collections.singletonMap("async", Collections.singletonList("true")));
+         PathAddress jobAddress = PathAddress.pathAddress(ExportJobModel.RESOURCE_NAME, submitted.getId());
+         ExportJobModel status = submitted;
+         for (int i = 0; i < 1000 && status.getStatus() == ExportJobModel.Status.RUNNING; i++)
+         {
+            Thread.sleep(10);
+            status = (ExportJobModel) execute(root, OperationNames.READ_STATUS, jobAddress, null);
+         }
+         assertEquals(ExportJobModel.Status.COMPLETED, status.getStatus());
+         assertEquals(3, status.getPrunedResourceCount());
+      }
+      finally
+      {
+         jobs.shutdown();
+      }
+   }
+
+   private static Object execute(SimpleManagedResource root, String operationName, PathAddress address, Map<String, List<String>> attributes)
+   {
+      if (attributes == null) attributes = Collections.emptyMap();
+
+      ManagedRequest request = ManagedRequest.Factory.create(operationName, address, attributes, ContentType.ZIP);
+      ResolvableManagedResource.Resolution resolution = root.resolve(address, operationName);
+      BasicResultHandler resultHandler = new BasicResultHandler();
+      resolution.getOperationHandler().execute(new OperationContextImpl(request, root, null, new GlobalBindingProvider()), resultHandler);
+
+      return resultHandler.getResult();
+   }
+}
@@ -0,0 +1,313 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.core.api.operation.global;
+
+import org.gatein.management.api.ContentType;
+import org.gatein.management.api.ManagedResource;
+import org.gatein.management.api.PathAddress;
+import org.gatein.management.api.controller.ManagedRequest;
+import org.gatein.management.api.exceptions.OperationException;
+import org.gatein.management.api.operation.OperationContext;
+import org.gatein.management.api.operation.OperationHandler;
+import org.gatein.management.api.operation.OperationNames;
+import org.gatein.management.api.operation.model.ExportResourceModel;
+import org.gatein.management.api.operation.model.ExportTask;
+import org.gatein.management.core.api.SimpleManagedResource;
+import org.gatein.management.core.api.operation.BasicResultHandler;
+import org.gatein.management.core.api.operation.OperationContextImpl;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.gatein.management.core.api.ExportFixtures.*;
+import static org.junit.Assert.*;
+
+/**
+ * @version $Revision$
+ */
+public class ExportResourceTest
+{
+   @Test
+   public void testExport()
+   {
+      ExportResource exportResource = new ExportResource();
+      SimpleManagedResource root = createResources(exportResource, null);
+
+      List<String> entries = export(root, exportResource);
+      assertEquals(40, entries.size());
+      assertTrue(entries.contains("/sites/site-0/pages/page-0"));
+      assertTrue(entries.contains("/sites/site-9/pages/page-3"));
+   }
+
+   @Test
+   public void testStreaming()
+   {
+      final AtomicInteger exported = new AtomicInteger();
+      SimpleManagedResource root = new SimpleManagedResource(null, null, DESC);
+      root.registerOperationHandler(OperationNames.READ_RESOURCE, GlobalOperationHandlers.READ_RESOURCE, DESC, true);
+      ManagedResource.Registration sites = root.registerSubResource("sites", DESC);
+      ExportResource exportResource = new ExportResource();
+      sites.registerOperationHandler(OperationNames.EXPORT_RESOURCE, exportResource, DESC, true);
+      for (int i = 0; i < 3; i++)
+      {
+         sites.registerSubResource("site-" + i, DESC).registerOperationHandler(OperationNames.EXPORT_RESOURCE, new AddressExportHandler()
+         {
+            @Override
+            protected void exporting(OperationContext operationContext, String address)
+            {
+               exported.incrementAndGet();
+            }
+         }, DESC);
+      }
+
+      ManagedRequest request = ManagedRequest.Factory.create(OperationNames.EXPORT_RESOURCE, PathAddress.pathAddress("sites"), ContentType.ZIP);
+      BasicResultHandler resultHandler = new BasicResultHandler();
+      exportResource.execute(new OperationContextImpl(request, root, null, null), resultHandler);
+
+      // Resources are only traversed up to the first task, and then as tasks are pulled
+      ExportResourceModel model = (ExportResourceModel) resultHandler.getResult();
+      assertTrue(model.isStreaming());
+      assertEquals(1, exported.get());
+
+      Iterator<ExportTask> tasks = model.getTaskIterator();
+      assertTrue(tasks.hasNext());
+      tasks.next();
+      assertEquals(1, exported.get());
+      assertTrue(tasks.hasNext());
+      assertEquals(2, exported.get());
+      tasks.next();
+      tasks.next();
+      assertFalse(tasks.hasNext());
+      assertEquals(3, exported.get());
+
+      try
+      {
+         model.getTasks();
+         fail();
+      }
+      catch (IllegalStateException e)
+      {
+      }
+   }
+
+   @Test
+   public void testStreamingFailure()
+   {
+      ExportResource exportResource = new ExportResource();
+      SimpleManagedResource root = createResources(exportResource, "/sites/site-7/pages/page-2");
+      try
+      {
+         export(root, exportResource);
+         fail();
+      }
+      catch (OperationException e)
+      {
+         assertTrue(e.getMessage(), e.getMessage().endsWith("[Step Address: /sites/site-7/pages/page-2]"));
+      }
+   }
+
+   @Test
+   public void testExportRunningJobs()
+   {
+      ExportJobs jobs = new ExportJobs(Executors.newSingleThreadExecutor(), 0);
+      try
+      {
+         ExportResource exportResource = new ExportResource();
+         SimpleManagedResource root = createResources(jobs.asyncExportHandler(exportResource), null);
+
+         assertEquals(40, export(root, exportResource).size());
+      }
+      finally
+      {
+         jobs.shutdown();
+      }
+   }
+
+   @Test
+   public void testParallelTraversal()
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(3);
+      try
+      {
+         List<String> expected = export(createResources(new ExportResource(), null), null);
+
+         ExportResource exportResource = new ExportResource(executor, 3);
+         assertEquals(expected, export(createResources(exportResource, null), exportResource));
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testParallelTraversalFailure()
+   {
+      ExecutorService executor = Executors.newFixedThreadPool(3);
+      try
+      {
+         ExportResource exportResource = new ExportResource(executor, 3);
+         SimpleManagedResource root = createResources(exportResource, "/sites/site-7/pages/page-2");
+         try
+         {
+            export(root, exportResource);
+            fail();
+         }
+         catch (OperationException e)
+         {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("[Step Address: /sites/site-7/pages/page-2]"));
+         }
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testParallelTraversalPermitsPerExport() throws Exception
+   {
+      ExecutorService executor = Executors.newCachedThreadPool();
+      final CountDownLatch blocked = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      Thread first = null;
+      try
+      {
+         final ExportResource exportResource = new ExportResource(executor, 1);
+         final SimpleManagedResource blocking = createBranches(exportResource, new AddressExportHandler()
+         {
+            @Override
+            protected void exporting(OperationContext operationContext, String address)
+            {
+               blocked.countDown();
+               try
+               {
+                  release.await();
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+               }
+            }
+         });
+         first = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               export(blocking, exportResource);
+            }
+         };
+         first.start();
+         assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+         // The permit held by the first export doesn't keep the second one from handing branches to the executor
+         final Thread caller = Thread.currentThread();
+         final List<String> handedOff = Collections.synchronizedList(new ArrayList<String>());
+         SimpleManagedResource recording = createBranches(exportResource, new AddressExportHandler()
+         {
+            @Override
+            protected void exporting(OperationContext operationContext, String address)
+            {
+               if (Thread.currentThread() != caller) handedOff.add(address);
+            }
+         });
+         assertEquals(Arrays.asList("/sites/a", "/sites/b"), export(recording, exportResource));
+         assertEquals(Collections.singletonList("/sites/a"), handedOff);
+      }
+      finally
+      {
+         release.countDown();
+         if (first != null) first.join(10000);
+         executor.shutdownNow();
+      }
+   }
+
+   private static List<String> export(SimpleManagedResource root, ExportResource exportResource)
+   {
+      if (exportResource == null) exportResource = new ExportResource();
+
+      ManagedRequest request = ManagedRequest.Factory.create(OperationNames.EXPORT_RESOURCE, PathAddress.pathAddress("sites"), ContentType.ZIP);
+      OperationContext operationContext = new OperationContextImpl(request, root, null, null);
+      BasicResultHandler resultHandler = new BasicResultHandler();
+      exportResource.execute(operationContext, resultHandler);
+
+      List<String> entries = new ArrayList<String>();
+      for (ExportTask task : ((ExportResourceModel) resultHandler.getResult()).getTasks())
+      {
+         entries.add(task.getEntry());
+      }
+      return entries;
+   }
+
+   private static SimpleManagedResource createBranches(OperationHandler exportResource, OperationHandler branchExport)
+   {
+      SimpleManagedResource root = new SimpleManagedResource(null, null, DESC);
+      root.registerOperationHandler(OperationNames.READ_RESOURCE, GlobalOperationHandlers.READ_RESOURCE, DESC, true);
+
+      ManagedResource.Registration sites = root.registerSubResource("sites", DESC);
+      sites.registerOperationHandler(OperationNames.EXPORT_RESOURCE, exportResource, DESC);
+      sites.registerSubResource("a", DESC).registerOperationHandler(OperationNames.EXPORT_RESOURCE, branchExport, DESC);
+      sites.registerSubResource("b", DESC).registerOperationHandler(OperationNames.EXPORT_RESOURCE, branchExport, DESC);
+
+      return root;
+   }
+
+   private static SimpleManagedResource createResources(OperationHandler exportResource, final String failingAddress)
+   {
+      SimpleManagedResource root = new SimpleManagedResource(null, null, DESC);
+      root.registerOperationHandler(OperationNames.READ_RESOURCE, GlobalOperationHandlers.READ_RESOURCE, DESC, true);
+
+      ManagedResource.Registration sites = root.registerSubResource("sites", DESC);
+      sites.registerOperationHandler(OperationNames.EXPORT_RESOURCE, exportResource, DESC, true);
+
+      OperationHandler pageExport = new AddressExportHandler()
+      {
+         @Override
+         protected void exporting(OperationContext operationContext, String address)
+         {
+            if (address.equals(failingAddress)) throw new OperationException(operationContext.getOperationName(), "Export failed");
+         }
+      };
+
+      for (int i = 0; i < 10; i++)
+      {
+         ManagedResource.Registration pages = sites.registerSubResource("site-" + i, DESC).registerSubResource("pages", DESC);
+         for (int j = 0; j < 4; j++)
+         {
+            pages.registerSubResource("page-" + j, DESC).registerOperationHandler(OperationNames.EXPORT_RESOURCE, pageExport, DESC);
+         }
+      }
+
+      return root;
+   }
+}
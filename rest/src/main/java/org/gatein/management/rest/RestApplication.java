@@ -27,6 +27,7 @@ import org.gatein.management.api.controller.ManagementController;
 import org.gatein.management.rest.providers.BindingProviderResolver;
 import org.gatein.management.rest.providers.JsonResourceProvider;
 import org.gatein.management.rest.providers.ManagedComponentProvider;
+import org.gatein.management.rest.upload.UploadSessions;
 
 import javax.ws.rs.core.Application;
 import java.util.HashSet;
@@ -46,9 +47,11 @@ public class RestApplication extends Application
    public RestApplication(ManagementService service, ManagementController controller)
    {
       // Singletons
-      singletons = new HashSet<Object>(3);
+      RestController restController = new RestController(controller);
+      singletons = new HashSet<Object>(4);
       singletons.add(new BindingProviderResolver(service));
-      singletons.add(new RestController(controller));
+      singletons.add(restController);
+      singletons.add(new UploadSessionController(restController, new UploadSessions()));
       singletons.add(new JsonResourceProvider());
 
       // Classes
@@ -26,11 +26,17 @@ import org.gatein.common.logging.Logger;
 import org.gatein.common.logging.LoggerFactory;
 import org.gatein.management.api.ContentType;
 import org.gatein.management.api.PathAddress;
+import org.gatein.management.api.controller.AsyncManagementController;
 import org.gatein.management.api.controller.ManagedResponse;
+import org.gatein.management.api.controller.SpoolingOutputStream;
 import org.gatein.management.api.controller.ManagementController;
 import org.gatein.management.api.exceptions.OperationException;
 import org.gatein.management.api.exceptions.ResourceNotFoundException;
 import org.gatein.management.api.operation.OperationNames;
+import org.gatein.management.api.operation.model.ExportJobModel;
+import org.gatein.management.api.operation.model.ExportManifest;
+import org.gatein.management.api.operation.model.ExportResourceModel;
+import org.gatein.management.api.operation.model.ImportResultModel;
 import org.gatein.management.api.operation.model.NoResultModel;
 import org.gatein.management.api.operation.model.ReadResourceModel;
 import org.gatein.management.rest.content.Resource;
@@ -46,11 +52,25 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.core.Variant;
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.security.DigestOutputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import static javax.ws.rs.core.Response.*;
 import static org.gatein.management.rest.HttpManagedRequestBuilder.*;
@@ -64,11 +84,29 @@ public class RestController
 {
    private static final Logger log = LoggerFactory.getLogger(RestController.class);
 
+   /**
+    * Comma separated names of the operations executed in the background, under the concurrency limit of their
+    * operation, when the controller supports it. None by default, as extensions may rely on state bound to the
+    * request thread. The request thread still waits for the response, so this limits how many requests of an
+    * operation run at once, but does not free request threads during long operations.
+    */
+   public static final String ASYNC_OPERATIONS_PROPERTY = "gatein.management.rest.async-operations";
+
+   // Time after which a spooled export whose entity was not written is released
+   private static final long SPOOLED_EXPORT_TIMEOUT = 10 * 60 * 1000L;
+
    private ManagementController controller;
+   private final Set<String> asyncOperations;
+   private final Set<SpooledExport> spooledExports = new HashSet<SpooledExport>();
 
    public RestController(ManagementController controller)
    {
       this.controller = controller;
+      this.asyncOperations = new HashSet<String>();
+      for (String operationName : System.getProperty(ASYNC_OPERATIONS_PROPERTY, "").split(","))
+      {
+         if (operationName.trim().length() > 0) asyncOperations.add(operationName.trim());
+      }
    }
 
    //------------------------------------- Html (browser) Handlers -------------------------------------//
@@ -320,12 +358,12 @@ public class RestController
    @Path("/{path:.*}")
    @Produces("application/zip")
    @RolesAllowed("administrators")
-   public Response zipGetRequest(@Context UriInfo uriInfo, @PathParam("path") String path)
+   public Response zipGetRequest(@Context UriInfo uriInfo, @Context Request httpRequest, @PathParam("path") String path)
    {
       HttpManagedRequest request = get().path(path).parameters(uriInfo.getQueryParameters())
          .operationName(OperationNames.EXPORT_RESOURCE).contentType(ContentType.ZIP).build();
 
-      return executeRequest(uriInfo, request);
+      return executeRequest(uriInfo, httpRequest, request);
    }
 
    @PUT
@@ -342,7 +380,12 @@ public class RestController
    }
 
    //----------------------------------------- Private Handler -----------------------------------------//
-   private Response executeRequest(UriInfo uriInfo, HttpManagedRequest request)
+   Response executeRequest(UriInfo uriInfo, HttpManagedRequest request)
+   {
+      return executeRequest(uriInfo, null, request);
+   }
+
+   private Response executeRequest(UriInfo uriInfo, Request httpRequest, HttpManagedRequest request)
    {
       ContentType contentType = request.getContentType();
       if (contentType == null)
@@ -358,13 +401,13 @@ public class RestController
       PathAddress address = request.getAddress();
       try
       {
-         ManagedResponse resp = controller.execute(request);
+         ManagedResponse resp = execute(request);
          if (resp == null)
          {
             return failure("No response returned.", operationName, Status.INTERNAL_SERVER_ERROR, contentType);
          }
 
-         return success(uriInfo, resp, contentType);
+         return success(uriInfo, httpRequest, resp, contentType);
       }
       catch (ResourceNotFoundException nfe)
       {
@@ -379,6 +422,10 @@ public class RestController
          log.error("Operation exception for operation: " + operationName + ", address: " + address + ", content-type: " + contentType, e);
          return failure(e.getMessage(), operationName, Status.INTERNAL_SERVER_ERROR, contentType);
       }
+      catch (RejectedExecutionException e)
+      {
+         return failure(e.getMessage(), operationName, Status.SERVICE_UNAVAILABLE, contentType);
+      }
       catch (Exception e)
       {
          String message = "Error processing operation: " + operationName + ", address: " + address + ", content-type: " + contentType;
@@ -388,6 +435,33 @@ public class RestController
       }
    }
 
+   private ManagedResponse execute(HttpManagedRequest request) throws Exception
+   {
+      if (!(controller instanceof AsyncManagementController) || !asyncOperations.contains(request.getOperationName()))
+      {
+         return controller.execute(request);
+      }
+
+      Future<ManagedResponse> future = ((AsyncManagementController) controller).executeAsync(request);
+      try
+      {
+         return future.get();
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+         if (cause instanceof Exception) throw (Exception) cause;
+         if (cause instanceof Error) throw (Error) cause;
+         throw e;
+      }
+      catch (InterruptedException e)
+      {
+         future.cancel(true);
+         Thread.currentThread().interrupt();
+         throw e;
+      }
+   }
+
    private Response failure(String failureDescription, String operationName, Status status, ContentType contentType)
    {
       if (contentType == null)
@@ -403,7 +477,7 @@ public class RestController
       return Response.status(status).entity(new FailureResult(failureDescription, operationName)).type(mediaType).build();
    }
 
-   private Response success(UriInfo uriInfo, ManagedResponse response, ContentType contentType)
+   private Response success(UriInfo uriInfo, Request httpRequest, ManagedResponse response, ContentType contentType) throws IOException
    {
       MediaType mediaType = ContentTypeUtils.getMediaType(contentType);
 
@@ -416,10 +490,83 @@ public class RestController
       {
          return Response.ok().type(mediaType).build();
       }
+      else if (result instanceof ExportJobModel)
+      {
+         // Export submitted as a job, whose status is at the location returned and archive downloaded from there once completed.
+         if (contentType == ContentType.ZIP) mediaType = MediaType.APPLICATION_JSON_TYPE;
+
+         ExportJobModel job = (ExportJobModel) result;
+         URI location = uriInfo.getBaseUriBuilder().path(RestApplication.API_ENTRY_POINT).path(ExportJobModel.RESOURCE_NAME).path(job.getId()).build();
+         return Response.status(Status.ACCEPTED).location(location).entity(result).type(mediaType).build();
+      }
+      else if (result instanceof ImportResultModel)
+      {
+         // Result of importing an archive
+         if (contentType == ContentType.ZIP) mediaType = MediaType.APPLICATION_JSON_TYPE;
+      }
+      else if (result instanceof ExportResourceModel && ((ExportResourceModel) result).isDeterministic() && httpRequest != null)
+      {
+         return deterministicExport(httpRequest, response, mediaType);
+      }
 
       return Response.ok(result).type(mediaType).build();
    }
 
+   /**
+    * Deterministic exports are byte for byte identical for the same configuration, so the digest of the archive is
+    * used as a strong ETag. The archive has to be spooled to compute it, which saves the transfer to clients that
+    * already have it, not the export itself, and the archive is only sent once completely written.
+    */
+   private Response deterministicExport(Request httpRequest, ManagedResponse response, MediaType mediaType) throws IOException
+   {
+      purgeSpooledExports();
+
+      SpoolingOutputStream spool = new SpoolingOutputStream();
+      boolean sent = false;
+      try
+      {
+         DigestOutputStream out = new DigestOutputStream(spool, ExportManifest.newDigest());
+         response.writeResult(out);
+         out.flush();
+
+         EntityTag tag = new EntityTag(ExportManifest.toHex(out.getMessageDigest().digest()));
+         ResponseBuilder builder = httpRequest.evaluatePreconditions(tag);
+         if (builder != null)
+         {
+            return builder.tag(tag).build();
+         }
+
+         SpooledExport entity = new SpooledExport(spool);
+         synchronized (spooledExports)
+         {
+            spooledExports.add(entity);
+         }
+         sent = true;
+         return Response.ok(entity).tag(tag).type(mediaType).build();
+      }
+      finally
+      {
+         if (!sent) spool.release();
+      }
+   }
+
+   private void purgeSpooledExports()
+   {
+      long expired = System.currentTimeMillis() - SPOOLED_EXPORT_TIMEOUT;
+      synchronized (spooledExports)
+      {
+         for (Iterator<SpooledExport> iterator = spooledExports.iterator(); iterator.hasNext();)
+         {
+            SpooledExport export = iterator.next();
+            if (export.expire(expired))
+            {
+               iterator.remove();
+               log.debug("Released spooled export which was not written within " + SPOOLED_EXPORT_TIMEOUT + " ms");
+            }
+         }
+      }
+   }
+
    private Response validateRequest(HttpManagedRequest request)
    {
       String operationName = request.getOperationName();
@@ -462,4 +609,68 @@ public class RestController
    {
       return Response.status(Status.BAD_REQUEST).entity(new FailureResult(reason, operationName)).type(mediaType).build();
    }
+
+   /**
+    * Entity of a spooled export. Its spool is released once written or closed. The container may never write it, for
+    * instance when the client went away, so a spool not written within {@link #SPOOLED_EXPORT_TIMEOUT} is released by
+    * a later deterministic export.
+    */
+   private class SpooledExport implements StreamingOutput, Closeable
+   {
+      private final SpoolingOutputStream spool;
+      private final long created = System.currentTimeMillis();
+      private boolean writing;
+      private boolean released;
+
+      private SpooledExport(SpoolingOutputStream spool)
+      {
+         this.spool = spool;
+      }
+
+      @Override
+      public void write(OutputStream output) throws IOException
+      {
+         synchronized (this)
+         {
+            if (released) throw new IOException("Spooled export was released before being written.");
+            writing = true;
+         }
+
+         try
+         {
+            spool.writeTo(output);
+         }
+         finally
+         {
+            close();
+         }
+      }
+
+      @Override
+      public void close()
+      {
+         synchronized (spooledExports)
+         {
+            spooledExports.remove(this);
+         }
+
+         synchronized (this)
+         {
+            if (released) return;
+            released = true;
+         }
+         spool.release();
+      }
+
+      private boolean expire(long time)
+      {
+         synchronized (this)
+         {
+            if (writing || released || created >= time) return false;
+            released = true;
+         }
+         spool.release();
+         return true;
+      }
+   }
 }
@@ -0,0 +1,223 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.rest;
+
+import org.gatein.common.logging.Logger;
+import org.gatein.common.logging.LoggerFactory;
+import org.gatein.management.api.ContentType;
+import org.gatein.management.api.operation.OperationNames;
+import org.gatein.management.rest.content.Upload;
+import org.gatein.management.rest.upload.UploadSession;
+import org.gatein.management.rest.upload.UploadSessions;
+
+import javax.annotation.security.RolesAllowed;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static javax.ws.rs.core.Response.*;
+import static org.gatein.management.rest.HttpManagedRequestBuilder.*;
+
+/**
+ * Resumable uploads of archives to import. A session is opened with the size of the archive, chunks are
+ * PUT at their offset in any order, and the session is queried for the ranges received to resume an interrupted
+ * upload. Once complete, the upload is finalized by a POST to the session followed by the path of the resource to
+ * import, which runs the 'import-resource' operation on the assembled archive as a zip PUT on that path would.
+ *
+ * @version $Revision$
+ */
+@Path(RestApplication.API_ENTRY_POINT + "/" + UploadSessionController.RESOURCE_NAME)
+@Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+public class UploadSessionController
+{
+   private static final Logger log = LoggerFactory.getLogger(UploadSessionController.class);
+
+   public static final String RESOURCE_NAME = "upload-sessions";
+
+   private final RestController restController;
+   private final UploadSessions sessions;
+
+   public UploadSessionController(RestController restController, UploadSessions sessions)
+   {
+      this.restController = restController;
+      this.sessions = sessions;
+   }
+
+   @POST
+   @RolesAllowed("administrators")
+   public Response openSession(@Context UriInfo uriInfo, @QueryParam("size") @DefaultValue("-1") long size)
+   {
+      // The size tells a complete upload from one whose last chunks were lost
+      if (size < 0) return failure("Size of the upload is required.", Status.BAD_REQUEST);
+
+      try
+      {
+         UploadSession session = sessions.open(size);
+         URI location = uriInfo.getAbsolutePathBuilder().path(session.getId()).build();
+         return Response.created(location).entity(toUpload(session)).build();
+      }
+      catch (IOException e)
+      {
+         log.error("Could not open upload session", e);
+         return failure("Could not open upload session: " + e.getMessage(), Status.INTERNAL_SERVER_ERROR);
+      }
+   }
+
+   @GET
+   @Path("/{id}")
+   @RolesAllowed("administrators")
+   public Response getSession(@PathParam("id") String id)
+   {
+      UploadSession session = sessions.get(id);
+      if (session == null) return notFound(id);
+
+      return Response.ok(toUpload(session)).build();
+   }
+
+   @PUT
+   @Path("/{id}")
+   @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+   @RolesAllowed("administrators")
+   public Response writeChunk(@PathParam("id") String id, @QueryParam("offset") @DefaultValue("0") long offset, InputStream data)
+   {
+      UploadSession session = sessions.get(id);
+      if (session == null) return notFound(id);
+
+      try
+      {
+         session.write(offset, data);
+         return Response.ok(toUpload(session)).build();
+      }
+      catch (IllegalArgumentException e)
+      {
+         return failure(e.getMessage(), Status.BAD_REQUEST);
+      }
+      catch (IOException e)
+      {
+         // The client resumes from the ranges received
+         log.debug("Exception writing chunk at offset " + offset + " of upload session " + id, e);
+         return failure("Exception writing chunk at offset " + offset + ": " + e.getMessage(), Status.INTERNAL_SERVER_ERROR);
+      }
+   }
+
+   @DELETE
+   @Path("/{id}")
+   @RolesAllowed("administrators")
+   public Response deleteSession(@PathParam("id") String id)
+   {
+      if (!sessions.remove(id)) return notFound(id);
+
+      return Response.noContent().build();
+   }
+
+   @POST
+   @Path("/{id}/{path:.*}")
+   @RolesAllowed("administrators")
+   public Response importSession(@Context UriInfo uriInfo, @PathParam("id") String id, @PathParam("path") String path)
+   {
+      UploadSession session = sessions.get(id);
+      if (session == null) return notFound(id);
+      if (!session.isComplete())
+      {
+         return Response.status(Status.CONFLICT).entity(toUpload(session)).build();
+      }
+
+      InputStream data;
+      try
+      {
+         data = session.openStream();
+      }
+      catch (IOException e)
+      {
+         log.error("Could not read upload session " + id, e);
+         return failure("Could not read upload: " + e.getMessage(), Status.INTERNAL_SERVER_ERROR);
+      }
+
+      Response response;
+      try
+      {
+         MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+         HttpManagedRequest request = put(data).path(path).parameters(parameters)
+            .operationName(OperationNames.IMPORT_RESOURCE).contentType(ContentType.ZIP).build();
+
+         response = restController.executeRequest(uriInfo, request);
+      }
+      finally
+      {
+         try
+         {
+            data.close();
+         }
+         catch (IOException e)
+         {
+            log.debug("Exception closing upload session " + id, e);
+         }
+      }
+
+      // Keep the upload when the import failed, so it can be imported again without uploading it again
+      if (response.getStatus() < 300)
+      {
+         sessions.remove(id);
+      }
+
+      return response;
+   }
+
+   private static Upload toUpload(UploadSession session)
+   {
+      List<String> ranges = new ArrayList<String>();
+      for (long[] range : session.getRanges())
+      {
+         ranges.add(range[0] + "-" + (range[1] - 1));
+      }
+
+      return new Upload(session.getId(), session.getSize(), session.getReceived(), session.isComplete(), ranges);
+   }
+
+   private static Response notFound(String id)
+   {
+      return failure("Upload session " + id + " not found", Status.NOT_FOUND);
+   }
+
+   private static Response failure(String failureDescription, Status status)
+   {
+      return Response.status(status).entity(new FailureResult(failureDescription, null)).build();
+   }
+}
@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.rest.content;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Status of an upload session, listing the ranges received as "start-end" with both offsets inclusive.
+ *
+ * @version $Revision$
+ */
+@XmlRootElement(name = "upload")
+@XmlType(propOrder = {"id", "size", "received", "complete", "ranges"})
+public class Upload
+{
+   private String id;
+   private long size;
+   private long received;
+   private boolean complete;
+   private List<String> ranges = new ArrayList<String>();
+
+   public Upload()
+   {
+   }
+
+   public Upload(String id, long size, long received, boolean complete, List<String> ranges)
+   {
+      this.id = id;
+      this.size = size;
+      this.received = received;
+      this.complete = complete;
+      this.ranges = ranges;
+   }
+
+   public String getId()
+   {
+      return id;
+   }
+
+   public void setId(String id)
+   {
+      this.id = id;
+   }
+
+   public long getSize()
+   {
+      return size;
+   }
+
+   public void setSize(long size)
+   {
+      this.size = size;
+   }
+
+   public long getReceived()
+   {
+      return received;
+   }
+
+   public void setReceived(long received)
+   {
+      this.received = received;
+   }
+
+   public boolean isComplete()
+   {
+      return complete;
+   }
+
+   public void setComplete(boolean complete)
+   {
+      this.complete = complete;
+   }
+
+   @XmlElementWrapper(name = "ranges")
+   @XmlElement(name = "range")
+   public List<String> getRanges()
+   {
+      return ranges;
+   }
+
+   public void setRanges(List<String> ranges)
+   {
+      this.ranges = ranges;
+   }
+}
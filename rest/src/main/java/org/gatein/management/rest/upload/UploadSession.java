@@ -0,0 +1,267 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.rest.upload;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Upload sent in chunks, each written to the spool file at its offset. The ranges received are recorded as chunks are
+ * written, including the part of a chunk written before its connection dropped, so an interrupted upload resumes
+ * from the ranges missing.
+ *
+ * @version $Revision$
+ */
+public class UploadSession
+{
+   private static final int BUFFER_SIZE = 64 * 1024;
+
+   private final String id;
+   private final long size;
+   private final File file;
+   private final FileChannel channel;
+
+   // Start of each range received, mapped to its end (exclusive). Ranges are merged so none overlap or touch.
+   private final TreeMap<Long, Long> ranges = new TreeMap<Long, Long>();
+   private volatile long lastAccessed;
+   private int writing;
+   private boolean closed;
+
+   UploadSession(String id, long size, File file) throws IOException
+   {
+      if (size < 0) throw new IllegalArgumentException("size is negative");
+
+      this.id = id;
+      this.size = size;
+      this.file = file;
+      this.channel = new RandomAccessFile(file, "rw").getChannel();
+      this.lastAccessed = System.currentTimeMillis();
+   }
+
+   public String getId()
+   {
+      return id;
+   }
+
+   /**
+    * @return total size of the upload
+    */
+   public long getSize()
+   {
+      return size;
+   }
+
+   /**
+    * Writes a chunk at the given offset. Chunks may be written concurrently, and may overlap ranges already received.
+    *
+    * @param offset offset of the chunk in the upload
+    * @param inputStream content of the chunk
+    * @return number of bytes written
+    * @throws IOException if the chunk could not be read or written. Bytes written before the failure are recorded.
+    */
+   public long write(long offset, InputStream inputStream) throws IOException
+   {
+      if (offset < 0) throw new IllegalArgumentException("offset is negative");
+      if (offset > size) throw new IllegalArgumentException("offset " + offset + " is beyond the size of the upload " + size);
+
+      startWriting();
+      ReadableByteChannel in = Channels.newChannel(inputStream);
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      long position = offset;
+      try
+      {
+         while (in.read(buffer) != -1)
+         {
+            touch();
+            buffer.flip();
+            if (position + buffer.remaining() > size)
+            {
+               throw new IllegalArgumentException("Chunk at offset " + offset + " goes beyond the size of the upload " + size);
+            }
+
+            while (buffer.hasRemaining())
+            {
+               position += channel().write(buffer, position);
+            }
+            buffer.clear();
+         }
+      }
+      finally
+      {
+         received(offset, position);
+         endWriting();
+      }
+
+      return position - offset;
+   }
+
+   /**
+    * @return ranges received, as pairs of start (inclusive) and end (exclusive) offsets in increasing order
+    */
+   public synchronized List<long[]> getRanges()
+   {
+      List<long[]> list = new ArrayList<long[]>(ranges.size());
+      for (Map.Entry<Long, Long> range : ranges.entrySet())
+      {
+         list.add(new long[]{range.getKey(), range.getValue()});
+      }
+      return list;
+   }
+
+   /**
+    * @return number of bytes received
+    */
+   public synchronized long getReceived()
+   {
+      long received = 0;
+      for (Map.Entry<Long, Long> range : ranges.entrySet())
+      {
+         received += range.getValue() - range.getKey();
+      }
+      return received;
+   }
+
+   /**
+    * @return whether all bytes of the upload were received
+    */
+   public synchronized boolean isComplete()
+   {
+      if (ranges.isEmpty()) return size == 0;
+      if (ranges.size() > 1 || ranges.firstKey() != 0) return false;
+
+      return ranges.get(0L) == size;
+   }
+
+   /**
+    * Opens the assembled upload. No further chunks can be written once opened.
+    *
+    * @return stream reading the upload
+    * @throws IOException if the upload could not be read
+    */
+   public synchronized InputStream openStream() throws IOException
+   {
+      if (!isComplete()) throw new IllegalStateException("Upload " + id + " is not complete");
+
+      close();
+      touch();
+      return new FileInputStream(file);
+   }
+
+   /**
+    * Deletes the session if it was not accessed since the given time and no chunk is being written to it.
+    *
+    * @param time time in milliseconds
+    * @return whether the session was deleted
+    */
+   synchronized boolean expire(long time)
+   {
+      if (writing > 0 || lastAccessed >= time) return false;
+
+      delete();
+      return true;
+   }
+
+   synchronized void delete()
+   {
+      close();
+      if (!file.delete() && file.exists())
+      {
+         file.deleteOnExit();
+      }
+   }
+
+   private synchronized FileChannel channel() throws IOException
+   {
+      if (closed) throw new IOException("Upload " + id + " is no longer accepting chunks");
+
+      return channel;
+   }
+
+   private synchronized void startWriting() throws IOException
+   {
+      if (closed) throw new IOException("Upload " + id + " is no longer accepting chunks");
+
+      writing++;
+      touch();
+   }
+
+   private synchronized void endWriting()
+   {
+      writing--;
+      touch();
+   }
+
+   private synchronized void received(long start, long end)
+   {
+      if (end <= start) return;
+
+      // Merge with the range starting before, and with the ranges starting up to the end of this one
+      Map.Entry<Long, Long> floor = ranges.floorEntry(start);
+      if (floor != null && floor.getValue() >= start)
+      {
+         start = floor.getKey();
+         end = Math.max(end, floor.getValue());
+      }
+
+      Map.Entry<Long, Long> next = ranges.ceilingEntry(start);
+      while (next != null && next.getKey() <= end)
+      {
+         end = Math.max(end, next.getValue());
+         ranges.remove(next.getKey());
+         next = ranges.ceilingEntry(start);
+      }
+
+      ranges.put(start, end);
+   }
+
+   private void touch()
+   {
+      lastAccessed = System.currentTimeMillis();
+   }
+
+   private void close()
+   {
+      if (closed) return;
+
+      closed = true;
+      try
+      {
+         channel.close();
+      }
+      catch (IOException e)
+      {
+         // Nothing left to write
+      }
+   }
+}
@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.rest.upload;
+
+import org.gatein.common.logging.Logger;
+import org.gatein.common.logging.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Upload sessions of the REST interface, spooled to files of an in-process spool directory. Sessions not accessed
+ * within the timeout are discarded, along with their spool file, as new sessions are opened.
+ *
+ * @version $Revision$
+ */
+public class UploadSessions
+{
+   private static final Logger log = LoggerFactory.getLogger(UploadSessions.class);
+
+   /**
+    * Directory of the spool files of upload sessions. Defaults to a directory of the temporary directory.
+    */
+   public static final String SPOOL_DIRECTORY_PROPERTY = "gatein.management.upload.spool-directory";
+
+   /**
+    * Minutes an upload session is kept without being accessed.
+    */
+   public static final String SESSION_TIMEOUT_PROPERTY = "gatein.management.upload.session-timeout";
+
+   private final File spoolDirectory;
+   private final long timeout;
+   private final ConcurrentMap<String, UploadSession> sessions = new ConcurrentHashMap<String, UploadSession>();
+
+   public UploadSessions()
+   {
+      this(new File(System.getProperty(SPOOL_DIRECTORY_PROPERTY, new File(System.getProperty("java.io.tmpdir"), "gatein-uploads").getPath())),
+         Integer.getInteger(SESSION_TIMEOUT_PROPERTY, 60) * 60 * 1000L);
+   }
+
+   /**
+    * @param spoolDirectory directory of the spool files, created if needed
+    * @param timeout milliseconds a session is kept without being accessed
+    */
+   public UploadSessions(File spoolDirectory, long timeout)
+   {
+      if (spoolDirectory == null) throw new IllegalArgumentException("spoolDirectory is null");
+
+      this.spoolDirectory = spoolDirectory;
+      this.timeout = timeout;
+   }
+
+   /**
+    * @param size total size of the upload
+    * @return the session opened
+    * @throws IOException if the spool file could not be created
+    */
+   public UploadSession open(long size) throws IOException
+   {
+      if (size < 0) throw new IllegalArgumentException("size is negative");
+
+      purge();
+
+      if (!spoolDirectory.isDirectory() && !spoolDirectory.mkdirs() && !spoolDirectory.isDirectory())
+      {
+         throw new IOException("Could not create upload spool directory " + spoolDirectory);
+      }
+
+      String id = UUID.randomUUID().toString();
+      UploadSession session = new UploadSession(id, size, File.createTempFile("gatein-upload", ".spool", spoolDirectory));
+      sessions.put(id, session);
+      return session;
+   }
+
+   /**
+    * @param id id of the session
+    * @return the session, or null if there is no such session
+    */
+   public UploadSession get(String id)
+   {
+      purge();
+
+      return sessions.get(id);
+   }
+
+   /**
+    * Discards a session and its spool file.
+    *
+    * @param id id of the session
+    * @return whether there was such a session
+    */
+   public boolean remove(String id)
+   {
+      UploadSession session = sessions.remove(id);
+      if (session == null) return false;
+
+      session.delete();
+      return true;
+   }
+
+   private void purge()
+   {
+      long expired = System.currentTimeMillis() - timeout;
+      for (Iterator<UploadSession> iterator = sessions.values().iterator(); iterator.hasNext();)
+      {
+         UploadSession session = iterator.next();
+         if (session.expire(expired))
+         {
+            iterator.remove();
+            log.debug("Discarded expired upload session " + session.getId());
+         }
+      }
+   }
+}
@@ -0,0 +1,266 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.management.rest.upload;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @version $Revision$
+ */
+public class UploadSessionTest
+{
+   private File directory;
+   private UploadSessions sessions;
+
+   @Before
+   public void setUp() throws Exception
+   {
+      directory = File.createTempFile("gatein-uploads", "");
+      assertTrue(directory.delete());
+      sessions = new UploadSessions(directory, 60 * 1000);
+   }
+
+   @After
+   public void tearDown()
+   {
+      File[] files = directory.listFiles();
+      if (files != null)
+      {
+         for (File file : files)
+         {
+            file.delete();
+         }
+      }
+      directory.delete();
+   }
+
+   @Test
+   public void testChunksOutOfOrder() throws Exception
+   {
+      UploadSession session = sessions.open(10);
+      session.write(6, stream("6789"));
+      assertFalse(session.isComplete());
+      session.write(0, stream("012"));
+      assertRanges(session, 0, 3, 6, 10);
+      assertEquals(7, session.getReceived());
+
+      // Overlapping chunk filling the gap
+      session.write(2, stream("2345"));
+      assertRanges(session, 0, 10);
+      assertTrue(session.isComplete());
+      assertEquals("0123456789", read(session.openStream()));
+
+      assertSame(session, sessions.get(session.getId()));
+      assertTrue(sessions.remove(session.getId()));
+      assertNull(sessions.get(session.getId()));
+      assertEquals(0, directory.list().length);
+   }
+
+   @Test
+   public void testInterruptedChunk() throws Exception
+   {
+      UploadSession session = sessions.open(10);
+      try
+      {
+         session.write(0, new InputStream()
+         {
+            private int count;
+
+            @Override
+            public int read() throws IOException
+            {
+               if (count == 5) throw new IOException("Connection reset");
+               return '0' + count++;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+               if (count == 5) throw new IOException("Connection reset");
+               b[off] = (byte) read();
+               return 1;
+            }
+         });
+         fail();
+      }
+      catch (IOException e)
+      {
+      }
+
+      // Resumes after the bytes received before the connection dropped
+      assertRanges(session, 0, 5);
+      assertFalse(session.isComplete());
+      session.write(5, stream("56789"));
+      assertTrue(session.isComplete());
+      assertEquals("0123456789", read(session.openStream()));
+   }
+
+   @Test
+   public void testExpiredSessionPurged() throws Exception
+   {
+      UploadSessions sessions = new UploadSessions(directory, 1);
+      final UploadSession session = sessions.open(10);
+      final CountDownLatch reading = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      final Exception[] failure = new Exception[1];
+      Thread writer = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            try
+            {
+               session.write(0, new InputStream()
+               {
+                  @Override
+                  public int read() throws IOException
+                  {
+                     return -1;
+                  }
+
+                  @Override
+                  public int read(byte[] b, int off, int len) throws IOException
+                  {
+                     reading.countDown();
+                     try
+                     {
+                        release.await();
+                     }
+                     catch (InterruptedException e)
+                     {
+                        throw new IOException(e.getMessage());
+                     }
+                     return -1;
+                  }
+               });
+            }
+            catch (Exception e)
+            {
+               failure[0] = e;
+            }
+         }
+      };
+      writer.start();
+      assertTrue(reading.await(10, TimeUnit.SECONDS));
+
+      // Not purged while a chunk is being written, however long the chunk takes
+      Thread.sleep(20);
+      assertSame(session, sessions.get(session.getId()));
+
+      release.countDown();
+      writer.join();
+      assertNull(failure[0]);
+
+      // Purged once idle for longer than the timeout, without a new session being opened
+      Thread.sleep(20);
+      assertNull(sessions.get(session.getId()));
+      assertEquals(0, directory.list().length);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testSizeRequired() throws Exception
+   {
+      sessions.open(-1);
+   }
+
+   @Test
+   public void testMissingLastChunk() throws Exception
+   {
+      UploadSession session = sessions.open(10);
+      session.write(0, stream("01234"));
+
+      // Contiguous from the start, but the last chunk is still missing
+      assertFalse(session.isComplete());
+      try
+      {
+         session.openStream();
+         fail();
+      }
+      catch (IllegalStateException e)
+      {
+      }
+   }
+
+   @Test
+   public void testChunkBeyondSize() throws Exception
+   {
+      UploadSession session = sessions.open(4);
+      try
+      {
+         session.write(2, stream("234"));
+         fail();
+      }
+      catch (IllegalArgumentException e)
+      {
+      }
+      assertFalse(session.isComplete());
+   }
+
+   private static void assertRanges(UploadSession session, long...offsets)
+   {
+      List<long[]> ranges = session.getRanges();
+      assertEquals(offsets.length / 2, ranges.size());
+      for (int i = 0; i < ranges.size(); i++)
+      {
+         assertEquals(offsets[i * 2], ranges.get(i)[0]);
+         assertEquals(offsets[i * 2 + 1], ranges.get(i)[1]);
+      }
+   }
+
+   private static InputStream stream(String data) throws IOException
+   {
+      return new ByteArrayInputStream(data.getBytes("UTF-8"));
+   }
+
+   private static String read(InputStream in) throws IOException
+   {
+      try
+      {
+         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         byte[] buffer = new byte[64];
+         int read;
+         while ((read = in.read(buffer)) != -1)
+         {
+            baos.write(buffer, 0, read);
+         }
+         return baos.toString("UTF-8");
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+}